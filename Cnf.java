@@ -0,0 +1,46 @@
+/**
+ * A CNF formula stored as one flat array of DIMACS literals where every
+ * clause is terminated by 0, exactly as it is written out. The array lives
+ * off-heap in an IntArena.
+ */
+public class Cnf {
+
+    private int variables;
+    private int clauses;
+    private final IntArena literals = new IntArena(1024);
+
+    public Cnf(int variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * Append one clause.
+     */
+    public void add(int... clause) {
+        literals.add(clause, 0, clause.length);
+        literals.add(0);
+        clauses++;
+    }
+
+    /**
+     * Return the number of stored ints, literals and terminating zeros.
+     */
+    public int getSize() {
+        return literals.size();
+    }
+
+    /**
+     * Return the i-th stored int; clauses are separated by 0.
+     */
+    public int get(int i) {
+        return literals.get(i);
+    }
+
+    public int getVariables() {
+        return variables;
+    }
+
+    public int getClauses() {
+        return clauses;
+    }
+}
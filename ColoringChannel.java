@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands colorings from solver threads to the canvas without locks. Engines
+ * publish whenever they improve and the reader takes only the latest
+ * snapshot, as often as it likes; a snapshot that isn't better than the
+ * current one is dropped, so several engines can share a channel.
+ */
+public class ColoringChannel {
+
+    /**
+     * One published coloring. Vertices may be ColoringProblem.FREE.
+     */
+    public static class Snapshot {
+
+        private final int[] colors;
+        private final long cost;
+        private final int version;
+
+        private Snapshot(int[] colors, long cost, int version) {
+            this.colors = colors;
+            this.cost = cost;
+            this.version = version;
+        }
+
+        /**
+         * Return the colors; callers must not change them.
+         */
+        public int[] getColors() {
+            return colors;
+        }
+
+        public long getCost() {
+            return cost;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    private final AtomicReference<Snapshot> latest = new AtomicReference<Snapshot>();
+
+    /**
+     * Publish a copy of colors if cost is lower than the latest snapshot's.
+     * Return true if it was taken.
+     */
+    public boolean publish(int[] colors, long cost) {
+        Snapshot current = latest.get();
+        if (current != null && current.cost <= cost) {
+            return false;
+        }
+        int[] copy = colors.clone();
+        while (current == null || cost < current.cost) {
+            int version = current == null ? 1 : current.version + 1;
+            if (latest.compareAndSet(current, new Snapshot(copy, cost, version))) {
+                return true;
+            }
+            current = latest.get();
+        }
+        return false;
+    }
+
+    /**
+     * Return the latest snapshot, or null if nothing was published yet.
+     */
+    public Snapshot latest() {
+        return latest.get();
+    }
+}
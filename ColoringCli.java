@@ -0,0 +1,141 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The headless entry point for batch jobs. It never touches AWT or Swing,
+ * so it starts in a fraction of the time GraphPanel needs.
+ *
+ * Usage: java ColoringCli k edge-file [out-file]
+ *
+ * The edge file has one "a b" pair of vertex numbers per line, "-" reads it
+ * from standard input. Without an out-file the answer goes to standard
+ * output: "SAT" and one "vertex color" line per vertex, or "UNSAT". An
+ * out-file ending in .csv, .json or .bin, optionally followed by .gz, is
+ * written by Exporter instead. The exit status is 0 for SAT, 1 for UNSAT.
+ *
+ * The problem is solved in this JVM, unless -Dcoloring.backend picks a
+ * backend as for GraphPanel.
+ */
+public class ColoringCli {
+
+    private static final String USAGE = "Usage: java ColoringCli k edge-file [out-file]";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            usage(USAGE, null);
+        }
+        ColoringProblem problem = null;
+        try {
+            problem = readProblem(parseColors(args[0]), args[1]);
+        } catch (IllegalArgumentException e) {
+            usage(USAGE, e.getMessage());
+        }
+        int[] colors = System.getProperty("coloring.backend") == null ? SatColoring.solveInProcess(problem)
+                : SatColoring.solve(problem);
+        if (colors != null && args.length > 2) {
+            write(colors, Paths.get(args[2]));
+        } else {
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            out.println(colors == null ? "UNSAT" : "SAT");
+            for (int v = 0; colors != null && v < colors.length; v++) {
+                out.println(v + " " + colors[v]);
+            }
+            out.flush();
+        }
+        System.exit(colors == null ? 1 : 0);
+    }
+
+    /**
+     * Print msg, if any, and usage to standard error and exit with status 2.
+     */
+    static void usage(String usage, String msg) {
+        if (msg != null) {
+            System.err.println(msg);
+        }
+        System.err.println(usage);
+        System.exit(2);
+    }
+
+    /**
+     * Parse the color count argument.
+     */
+    static int parseColors(String arg) {
+        try {
+            return Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("k must be a whole number, got \"" + arg + "\"");
+        }
+    }
+
+    /**
+     * Read a k-coloring problem from an edge file, or from standard input if
+     * the name is "-". Blank lines and lines starting with # are skipped.
+     * Malformed input is reported with an IllegalArgumentException that
+     * names the line.
+     */
+    public static ColoringProblem readProblem(int k, String name) throws IOException {
+        BufferedReader reader = name.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(name), StandardCharsets.UTF_8);
+        Solver.IntVec ends = new Solver.IntVec();
+        int vertices = 0;
+        try {
+            String line;
+            for (int number = 1; (line = reader.readLine()) != null; number++) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                int a = parts.length < 2 ? -1 : parseVertex(parts[0]);
+                int b = parts.length < 2 ? -1 : parseVertex(parts[1]);
+                if (a < 0 || b < 0) {
+                    throw new IllegalArgumentException(name + ":" + number + ": expected two vertex numbers, got \""
+                            + line + "\"");
+                }
+                if (a == b) {
+                    throw new IllegalArgumentException(name + ":" + number + ": self loop on vertex " + a);
+                }
+                ends.push2(a, b);
+                vertices = Math.max(vertices, Math.max(a, b) + 1);
+            }
+        } finally {
+            reader.close();
+        }
+        int[] edges = new int[ends.size];
+        System.arraycopy(ends.data, 0, edges, 0, ends.size);
+        return new ColoringProblem(vertices, k, edges);
+    }
+
+    /*
+     * Return the vertex number in s, or -1 if it isn't one.
+     */
+    private static int parseVertex(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void write(int[] colors, Path path) throws IOException {
+        String name = Exporter.formatName(path);
+        if (name.endsWith(".csv")) {
+            Exporter.writeCsv(colors, path);
+        } else if (name.endsWith(".json")) {
+            Exporter.writeJson(colors, path);
+        } else if (name.endsWith(".bin")) {
+            Exporter.writeBinary(colors, path);
+        } else {
+            throw new IOException("Please end the file name with .csv, .json or .bin");
+        }
+    }
+}
@@ -0,0 +1,306 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A graph coloring instance that does not depend on the Swing canvas.
+ * Vertices are numbered 0..n-1 and colors 0..k-1. Each vertex has a list of
+ * allowed colors kept as a bit mask; a pinned vertex is one whose list has a
+ * single color. Edges are kept as normalized (smaller, larger) pairs without
+ * duplicates so that two equivalent requests compare equal.
+ */
+public class ColoringProblem {
+
+    public static final int FREE = -1;
+    public static final int MAX_COLORS = 64;
+
+    private final int vertices;
+    private final int colors;
+    private final int[] edges;
+    private final long[] allowed;
+    private final int hash;
+    private int[] adjStart;
+    private volatile int[] adj;
+
+    /**
+     * Construct a problem without pinned colors.
+     */
+    public ColoringProblem(int vertices, int colors, int[] edges) {
+        this(vertices, colors, edges, null, null);
+    }
+
+    /**
+     * Construct a problem with some vertices pinned to one color.
+     */
+    public ColoringProblem(int vertices, int colors, int[] edges, int[] pinned) {
+        this(vertices, colors, edges, pinned, null);
+    }
+
+    /**
+     * Construct a problem. edges holds the end points pairwise, pinned holds
+     * each vertex's fixed color or FREE, and allowed holds each vertex's mask
+     * of usable colors. Either may be null.
+     */
+    public ColoringProblem(int vertices, int colors, int[] edges, int[] pinned, long[] allowed) {
+        if (vertices < 0) {
+            throw new IllegalArgumentException("Negative vertex count: " + vertices);
+        }
+        if (colors < 1) {
+            throw new IllegalArgumentException("Need at least one color, got " + colors);
+        }
+        if (colors > MAX_COLORS) {
+            throw new IllegalArgumentException("At most " + MAX_COLORS + " colors are supported, got " + colors);
+        }
+        if (edges.length % 2 != 0) {
+            throw new IllegalArgumentException("Edge list has an odd number of end points");
+        }
+        this.vertices = vertices;
+        this.colors = colors;
+        this.edges = normalize(vertices, edges);
+        this.allowed = new long[vertices];
+        Arrays.fill(this.allowed, allColors(colors));
+        if (allowed != null) {
+            if (allowed.length != vertices) {
+                throw new IllegalArgumentException("Expected " + vertices + " allowed entries, got " + allowed.length);
+            }
+            for (int v = 0; v < vertices; v++) {
+                this.allowed[v] &= allowed[v];
+            }
+        }
+        if (pinned != null) {
+            if (pinned.length != vertices) {
+                throw new IllegalArgumentException("Expected " + vertices + " pinned entries, got " + pinned.length);
+            }
+            for (int v = 0; v < vertices; v++) {
+                if (pinned[v] < FREE || pinned[v] >= colors) {
+                    throw new IllegalArgumentException("Vertex " + v + " pinned to unknown color " + pinned[v]);
+                }
+                if (pinned[v] != FREE) {
+                    this.allowed[v] &= 1L << pinned[v];
+                }
+            }
+        }
+        this.hash = 31 * (31 * (31 * vertices + colors) + Arrays.hashCode(this.edges)) + Arrays.hashCode(this.allowed);
+    }
+
+    /**
+     * Return the mask with all of the first colors bits set.
+     */
+    public static long allColors(int colors) {
+        return colors >= 64 ? -1L : (1L << colors) - 1;
+    }
+
+    private static int[] normalize(int vertices, int[] edges) {
+        long[] keys = new long[edges.length / 2];
+        for (int i = 0; i < keys.length; i++) {
+            int a = edges[2 * i];
+            int b = edges[2 * i + 1];
+            if (a < 0 || a >= vertices || b < 0 || b >= vertices) {
+                throw new IllegalArgumentException("Edge " + a + "-" + b + " is out of range");
+            }
+            if (a == b) {
+                throw new IllegalArgumentException("Self loop on vertex " + a);
+            }
+            keys[i] = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+        }
+        Arrays.sort(keys);
+
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[n++] = keys[i];
+            }
+        }
+        int[] result = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            result[2 * i] = (int) (keys[i] >>> 32);
+            result[2 * i + 1] = (int) keys[i];
+        }
+        return result;
+    }
+
+    /**
+     * Glue problems with the same number of colors into one problem whose
+     * vertices are numbered one part after the other.
+     */
+    public static ColoringProblem union(List<ColoringProblem> parts) {
+        int colors = parts.get(0).colors;
+        int vertices = 0;
+        int endpoints = 0;
+        for (ColoringProblem p : parts) {
+            if (p.colors != colors) {
+                throw new IllegalArgumentException("Cannot join problems with different color counts");
+            }
+            vertices += p.vertices;
+            endpoints += p.edges.length;
+        }
+
+        int[] edges = new int[endpoints];
+        long[] allowed = new long[vertices];
+        int offset = 0;
+        int pos = 0;
+        for (ColoringProblem p : parts) {
+            for (int e : p.edges) {
+                edges[pos++] = e + offset;
+            }
+            System.arraycopy(p.allowed, 0, allowed, offset, p.vertices);
+            offset += p.vertices;
+        }
+        return new ColoringProblem(vertices, colors, edges, null, allowed);
+    }
+
+    /**
+     * Return the same graph with colors colors. Lists lose the colors from
+     * colors upwards; colors beyond the current count are open to every
+     * vertex, as the greedy engine uses them when a list runs out.
+     */
+    public ColoringProblem withColors(int colors) {
+        long extra = allColors(colors) & ~allColors(this.colors);
+        long[] lists = new long[vertices];
+        for (int v = 0; v < vertices; v++) {
+            lists[v] = (allowed[v] | extra) & allColors(colors);
+        }
+        return new ColoringProblem(vertices, colors, edges, null, lists);
+    }
+
+    public int getVertices() {
+        return vertices;
+    }
+
+    public int getColors() {
+        return colors;
+    }
+
+    public int getEdgeCount() {
+        return edges.length / 2;
+    }
+
+    /**
+     * Return the first end point of edge i.
+     */
+    public int from(int i) {
+        return edges[2 * i];
+    }
+
+    /**
+     * Return the second end point of edge i.
+     */
+    public int to(int i) {
+        return edges[2 * i + 1];
+    }
+
+    /**
+     * Return the index of edge a-b, or -1 if there is no such edge.
+     */
+    public int edgeIndex(int a, int b) {
+        int lo = 0;
+        int hi = getEdgeCount() - 1;
+        int x = Math.min(a, b);
+        int y = Math.max(a, b);
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = edges[2 * mid] != x ? Integer.compare(edges[2 * mid], x) : Integer.compare(edges[2 * mid + 1], y);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the pinned color of v, or FREE unless exactly one color is allowed.
+     */
+    public int pinned(int v) {
+        return Long.bitCount(allowed[v]) == 1 ? Long.numberOfTrailingZeros(allowed[v]) : FREE;
+    }
+
+    /**
+     * Return the mask of colors v may take.
+     */
+    public long allowed(int v) {
+        return allowed[v];
+    }
+
+    public int degree(int v) {
+        if (adj == null) {
+            buildAdjacency();
+        }
+        return adjStart[v + 1] - adjStart[v];
+    }
+
+    /**
+     * Return the i-th neighbour of v.
+     */
+    public int neighbour(int v, int i) {
+        if (adj == null) {
+            buildAdjacency();
+        }
+        return adj[adjStart[v] + i];
+    }
+
+    /**
+     * Return the offsets into adjacency(): the neighbours of v are at
+     * adjacencyStart()[v] up to adjacencyStart()[v + 1]. Do not modify.
+     */
+    int[] adjacencyStart() {
+        if (adj == null) {
+            buildAdjacency();
+        }
+        return adjStart;
+    }
+
+    /**
+     * Return all adjacency lists back to back. Do not modify.
+     */
+    int[] adjacency() {
+        if (adj == null) {
+            buildAdjacency();
+        }
+        return adj;
+    }
+
+    /*
+     * Adjacency lists in compressed form, built on first use.
+     */
+    private synchronized void buildAdjacency() {
+        if (adj != null) {
+            return;
+        }
+        int[] start = new int[vertices + 1];
+        for (int e : edges) {
+            start[e + 1]++;
+        }
+        for (int v = 0; v < vertices; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] fill = Arrays.copyOf(start, vertices);
+        int[] list = new int[edges.length];
+        for (int i = 0; i < edges.length; i += 2) {
+            list[fill[edges[i]]++] = edges[i + 1];
+            list[fill[edges[i + 1]]++] = edges[i];
+        }
+        adjStart = start;
+        adj = list;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ColoringProblem)) {
+            return false;
+        }
+        ColoringProblem p = (ColoringProblem) o;
+        return hash == p.hash && vertices == p.vertices && colors == p.colors
+                && Arrays.equals(edges, p.edges) && Arrays.equals(allowed, p.allowed);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
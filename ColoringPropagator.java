@@ -0,0 +1,72 @@
+/**
+ * The "adjacent vertices differ" part of a coloring encoding, checked by the
+ * solver against the graph itself instead of through k binary clauses per
+ * edge. When "v has color c" becomes true, the same color is ruled out for
+ * every neighbour, and a clause is only spelled out when it has to explain a
+ * conflict.
+ *
+ * Variables follow SatColoring.Encoding: firstVar[v] + i means "v has the
+ * i-th color of domain[v]". A vertex with an empty domain has no variables.
+ */
+public class ColoringPropagator implements Solver.Exclusions {
+
+    private final ColoringProblem graph;
+    private final long[] domain;
+    private final int[] firstVar;
+    private final int[] vertexOf;
+    private final byte[] colorOf;
+
+    public ColoringPropagator(ColoringProblem graph, long[] domain, int[] firstVar) {
+        this.graph = graph;
+        this.domain = domain;
+        this.firstVar = firstVar;
+
+        int variables = 0;
+        for (int v = 0; v < domain.length; v++) {
+            if (domain[v] != 0) {
+                variables = Math.max(variables, firstVar[v] + Long.bitCount(domain[v]) - 1);
+            }
+        }
+        vertexOf = new int[variables + 1];
+        colorOf = new byte[variables + 1];
+        for (int v = 0; v < domain.length; v++) {
+            long colors = domain[v];
+            for (int x = firstVar[v]; colors != 0; x++) {
+                vertexOf[x] = v;
+                colorOf[x] = (byte) Long.numberOfTrailingZeros(colors);
+                colors &= colors - 1;
+            }
+        }
+    }
+
+    public ColoringProblem getGraph() {
+        return graph;
+    }
+
+    public long domain(int v) {
+        return domain[v];
+    }
+
+    public int firstVar(int v) {
+        return firstVar[v];
+    }
+
+    /**
+     * Return the variable for "v has color c", or 0 if there is none.
+     */
+    public int variable(int v, int c) {
+        long bit = 1L << c;
+        if ((domain[v] & bit) == 0) {
+            return 0;
+        }
+        return firstVar[v] + Long.bitCount(domain[v] & (bit - 1));
+    }
+
+    public int degree(int x) {
+        return x < vertexOf.length ? graph.degree(vertexOf[x]) : 0;
+    }
+
+    public int get(int x, int i) {
+        return variable(graph.neighbour(vertexOf[x], i), colorOf[x]);
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Headless coloring over HTTP, using the same SAT pipeline as the Run button.
+ *
+ * POST /color with {"k": 3, "edges": [[0, 1], [1, 2]]} and optionally
+ * "vertices", "pinned" (one color or -1 per vertex), "allowed" (a list of
+ * colors per vertex, or null for any) and "timeoutMs". Graphs with more
+ * than coloring.server.maxVertices vertices (default 1000000), or whose
+ * edge count times k exceeds coloring.server.maxEdgeColors (default
+ * 50000000), are refused. Vertices with fewer neighbours than colors are
+ * peeled off before encoding, so every vertex left has at least k
+ * neighbours and edges * k bounds the whole CNF, not just its edge clauses.
+ * The answer is {"status": "SAT", "colors": [...]} or {"status": "UNSAT"}.
+ * A full queue answers 503 and a job that runs out of time answers 504; its
+ * solver is stopped so the worker is free for the next request.
+ */
+public class ColoringServer {
+
+    private static final int PORT = 8077;
+    private static final int WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int HANDLER_THREADS = 32;
+    private static final int MAX_BODY = 16 << 20;
+    private static final long DEFAULT_TIMEOUT_MS = 10000;
+    private static final long MAX_TIMEOUT_MS = 60000;
+    private static final int MAX_VERTICES = Integer.getInteger("coloring.server.maxVertices", 1000000);
+    private static final long MAX_EDGE_COLORS = Long.getLong("coloring.server.maxEdgeColors", 50000000L);
+
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newFixedThreadPool(HANDLER_THREADS);
+    private final ColoringService service;
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        ColoringServer server = new ColoringServer(port, new ColoringService(SatColoring::solve, WORKERS, QUEUE_CAPACITY));
+        server.start();
+        SatColoring.warmUp();
+        System.out.println("Coloring server listening on http://localhost:" + server.getPort() + "/color");
+    }
+
+    /**
+     * Bind to localhost on port; 0 picks a free port.
+     */
+    public ColoringServer(int port, ColoringService service) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/color", new ColorHandler());
+        this.server.createContext("/health", new HealthHandler());
+        this.server.setExecutor(handlers);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        handlers.shutdownNow();
+        service.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private class ColorHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    reply(exchange, 405, error("Use POST"));
+                    return;
+                }
+
+                ColoringProblem problem;
+                long timeout;
+                try {
+                    Object body = Json.parse(readBody(exchange.getRequestBody()));
+                    if (!(body instanceof Map)) {
+                        throw new IllegalArgumentException("Expected a JSON object");
+                    }
+                    Map<?, ?> request = (Map<?, ?>) body;
+                    problem = toProblem(request);
+                    timeout = DEFAULT_TIMEOUT_MS;
+                    if (request.containsKey("timeoutMs")) {
+                        timeout = Math.min(MAX_TIMEOUT_MS, toInt(request.get("timeoutMs"), "timeoutMs"));
+                        if (timeout <= 0) {
+                            throw new IllegalArgumentException("\"timeoutMs\" must be positive");
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    reply(exchange, 400, error("Bad request: " + e.getMessage()));
+                    return;
+                }
+
+                Future<int[]> result = service.submit(problem, System.nanoTime() + timeout * 1000000);
+                try {
+                    int[] colors = result.get(timeout, TimeUnit.MILLISECONDS);
+                    reply(exchange, 200, colors == null ? "{\"status\":\"UNSAT\"}" : sat(colors));
+                } catch (TimeoutException e) {
+                    reply(exchange, 504, error("Timed out after " + timeout + " ms"));
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof TimeoutException) {
+                        reply(exchange, 504, error("Timed out after " + timeout + " ms"));
+                    } else if (e.getCause() instanceof RejectedExecutionException) {
+                        exchange.getResponseHeaders().set("Retry-After", "1");
+                        reply(exchange, 503, error("Server busy, " + service.getQueued() + " jobs queued"));
+                    } else {
+                        e.getCause().printStackTrace();
+                        reply(exchange, 500, error("The solver failed"));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    reply(exchange, 503, error("Shutting down"));
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private class HealthHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                reply(exchange, 200, "{\"status\":\"OK\",\"queued\":" + service.getQueued() + "}");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Read the request body, refusing anything over MAX_BODY bytes.
+     */
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+            if (out.size() > MAX_BODY) {
+                throw new IllegalArgumentException("Body larger than " + MAX_BODY + " bytes");
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Build the problem a request describes. Anything malformed is reported
+     * with an IllegalArgumentException whose message can go to the client.
+     */
+    static ColoringProblem toProblem(Map<?, ?> request) {
+        if (!request.containsKey("k")) {
+            throw new IllegalArgumentException("Missing \"k\"");
+        }
+        int k = toInt(request.get("k"), "k");
+        if (k < 1 || k > ColoringProblem.MAX_COLORS) {
+            throw new IllegalArgumentException("\"k\" must be between 1 and " + ColoringProblem.MAX_COLORS);
+        }
+        if (!request.containsKey("edges")) {
+            throw new IllegalArgumentException("Missing \"edges\"");
+        }
+        List<?> edgeList = toList(request.get("edges"), "edges");
+        if ((long) edgeList.size() * k > MAX_EDGE_COLORS) {
+            throw new IllegalArgumentException("Too large: " + edgeList.size() + " edges times " + k
+                    + " colors is more than " + MAX_EDGE_COLORS);
+        }
+        int[] ends = new int[2 * edgeList.size()];
+        int vertices = 0;
+        for (int i = 0; i < edgeList.size(); i++) {
+            List<?> pair = toList(edgeList.get(i), "edges[" + i + "]");
+            if (pair.size() != 2) {
+                throw new IllegalArgumentException("Edge " + i + " must have two end points");
+            }
+            ends[2 * i] = toVertex(pair.get(0), "edges[" + i + "][0]");
+            ends[2 * i + 1] = toVertex(pair.get(1), "edges[" + i + "][1]");
+            vertices = Math.max(vertices, Math.max(ends[2 * i], ends[2 * i + 1]) + 1);
+        }
+        if (request.containsKey("vertices")) {
+            int given = toInt(request.get("vertices"), "vertices");
+            if (given < vertices || given > MAX_VERTICES) {
+                throw new IllegalArgumentException("\"vertices\" must be between " + vertices + " and " + MAX_VERTICES);
+            }
+            vertices = given;
+        }
+
+        int[] pinned = null;
+        if (request.containsKey("pinned")) {
+            List<?> list = toList(request.get("pinned"), "pinned");
+            if (list.size() != vertices) {
+                throw new IllegalArgumentException("Expected " + vertices + " \"pinned\" entries, got " + list.size());
+            }
+            pinned = new int[list.size()];
+            for (int i = 0; i < pinned.length; i++) {
+                pinned[i] = toInt(list.get(i), "pinned[" + i + "]");
+                if (pinned[i] < ColoringProblem.FREE || pinned[i] >= k) {
+                    throw new IllegalArgumentException("Vertex " + i + " pinned to unknown color " + pinned[i]);
+                }
+            }
+        }
+
+        long[] allowed = null;
+        if (request.containsKey("allowed")) {
+            List<?> list = toList(request.get("allowed"), "allowed");
+            if (list.size() != vertices) {
+                throw new IllegalArgumentException("Expected " + vertices + " \"allowed\" entries, got " + list.size());
+            }
+            allowed = new long[list.size()];
+            for (int i = 0; i < allowed.length; i++) {
+                allowed[i] = -1L;
+                if (list.get(i) != null) {
+                    allowed[i] = 0;
+                    for (Object c : toList(list.get(i), "allowed[" + i + "]")) {
+                        int color = toInt(c, "allowed[" + i + "]");
+                        if (color < 0 || color >= k) {
+                            throw new IllegalArgumentException("Vertex " + i + " allows unknown color " + color);
+                        }
+                        allowed[i] |= 1L << color;
+                    }
+                }
+            }
+        }
+        return new ColoringProblem(vertices, k, ends, pinned, allowed);
+    }
+
+    private static List<?> toList(Object o, String field) {
+        if (!(o instanceof List)) {
+            throw new IllegalArgumentException("\"" + field + "\" must be an array");
+        }
+        return (List<?>) o;
+    }
+
+    private static int toInt(Object o, String field) {
+        if (!(o instanceof Long)) {
+            throw new IllegalArgumentException("\"" + field + "\" must be an integer");
+        }
+        long v = (Long) o;
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("\"" + field + "\" is out of range");
+        }
+        return (int) v;
+    }
+
+    private static int toVertex(Object o, String field) {
+        int v = toInt(o, field);
+        if (v < 0 || v >= MAX_VERTICES) {
+            throw new IllegalArgumentException("\"" + field + "\" must be a vertex between 0 and " + (MAX_VERTICES - 1));
+        }
+        return v;
+    }
+
+    private static String sat(int[] colors) {
+        StringBuilder sb = new StringBuilder("{\"status\":\"SAT\",\"colors\":[");
+        for (int i = 0; i < colors.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(colors[i]);
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String error(String msg) {
+        return "{\"error\":" + Json.quote(msg) + "}";
+    }
+
+    private static void reply(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
@@ -0,0 +1,216 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs coloring jobs on a bounded pool. Identical jobs in flight share one
+ * solve, and small jobs with the same number of colors are joined into a
+ * single problem so that one solver call answers all of them. A full queue
+ * is reported with RejectedExecutionException so callers can push back.
+ *
+ * Every job has a deadline that is handed to the solver, so a job nobody
+ * waits for any more frees its worker instead of solving on. A job that
+ * runs out of time fails with TimeoutException.
+ */
+public class ColoringService {
+
+    /**
+     * The solver used for each (possibly joined) problem. Returns null if the
+     * problem has no coloring, and gives up with TimeoutException once
+     * System.nanoTime() passes deadline, which may be
+     * SolverPool.NO_DEADLINE.
+     */
+    public interface Solver {
+
+        int[] solve(ColoringProblem problem, long deadline) throws Exception;
+    }
+
+    public static final int SMALL_JOB_EDGES = 64;
+    public static final int MAX_BATCH = 32;
+    public static final long BATCH_DELAY_MS = 5;
+
+    private final Solver solver;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final Map<ColoringProblem, Job> inflight = new ConcurrentHashMap<ColoringProblem, Job>();
+    private final List<Job> pending = new ArrayList<Job>();
+
+    private static class Job {
+
+        private final ColoringProblem problem;
+        private final long deadline;
+        private final CompletableFuture<int[]> result = new CompletableFuture<int[]>();
+
+        Job(ColoringProblem problem, long deadline) {
+            this.problem = problem;
+            this.deadline = deadline;
+        }
+
+        /*
+         * True if this job runs at least as long as one due by deadline.
+         */
+        boolean lasts(long deadline) {
+            return this.deadline == SolverPool.NO_DEADLINE
+                    || (deadline != SolverPool.NO_DEADLINE && this.deadline - deadline >= 0);
+        }
+    }
+
+    public ColoringService(Solver solver, int workers, int queueCapacity) {
+        this.solver = solver;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity));
+    }
+
+    /**
+     * Queue problem and return its future colors; the future holds null if
+     * the graph can't be colored.
+     */
+    public CompletableFuture<int[]> submit(ColoringProblem problem) {
+        return submit(problem, SolverPool.NO_DEADLINE);
+    }
+
+    /**
+     * Like submit(problem), but the job gives up once System.nanoTime()
+     * passes deadline. It shares a running identical job only if that one
+     * runs at least as long.
+     */
+    public CompletableFuture<int[]> submit(ColoringProblem problem, long deadline) {
+        final Job job = new Job(problem, deadline);
+        Job running = inflight.putIfAbsent(problem, job);
+        if (running != null && running.lasts(deadline)) {
+            return running.result;
+        }
+
+        if (running == null) {
+            job.result.whenComplete((colors, error) -> inflight.remove(job.problem, job));
+        }
+        try {
+            if (problem.getEdgeCount() <= SMALL_JOB_EDGES) {
+                enqueue(job);
+            } else {
+                executor.execute(() -> run(job));
+            }
+        } catch (RejectedExecutionException e) {
+            job.result.completeExceptionally(e);
+        }
+        return job.result;
+    }
+
+    private void enqueue(Job job) {
+        if (executor.getQueue().remainingCapacity() == 0) {
+            throw new RejectedExecutionException("Coloring queue is full");
+        }
+        synchronized (pending) {
+            pending.add(job);
+            if (pending.size() >= MAX_BATCH) {
+                flush();
+            } else if (pending.size() == 1) {
+                timer.schedule(() -> {
+                    synchronized (pending) {
+                        flush();
+                    }
+                }, BATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /*
+     * Must be called while holding the pending lock.
+     */
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Job> batch = new ArrayList<Job>(pending);
+        pending.clear();
+        try {
+            executor.execute(() -> runBatch(batch));
+        } catch (RejectedExecutionException e) {
+            for (Job job : batch) {
+                job.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void run(Job job) {
+        if (SolverPool.expired(job.deadline)) {
+            job.result.completeExceptionally(new TimeoutException("Ran out of time in the queue"));
+            return;
+        }
+        try {
+            job.result.complete(solver.solve(job.problem, job.deadline));
+        } catch (Throwable t) {
+            job.result.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * Solve jobs with the same color count as one disjoint union. A colorable
+     * union answers every member; otherwise each member is solved alone to
+     * find out which of them failed. The union may run until the last
+     * member's deadline.
+     */
+    private void runBatch(List<Job> batch) {
+        Map<Integer, List<Job>> byColors = new HashMap<Integer, List<Job>>();
+        for (Job job : batch) {
+            byColors.computeIfAbsent(job.problem.getColors(), k -> new ArrayList<Job>()).add(job);
+        }
+
+        for (List<Job> group : byColors.values()) {
+            if (group.size() == 1) {
+                run(group.get(0));
+                continue;
+            }
+
+            List<ColoringProblem> parts = new ArrayList<ColoringProblem>();
+            long deadline = group.get(0).deadline;
+            for (Job job : group) {
+                parts.add(job.problem);
+                if (job.lasts(deadline)) {
+                    deadline = job.deadline;
+                }
+            }
+            int[] colors;
+            try {
+                colors = SolverPool.expired(deadline) ? null : solver.solve(ColoringProblem.union(parts), deadline);
+            } catch (Throwable t) {
+                colors = null;
+            }
+
+            int offset = 0;
+            for (Job job : group) {
+                int n = job.problem.getVertices();
+                if (colors != null) {
+                    int[] own = new int[n];
+                    System.arraycopy(colors, offset, own, 0, n);
+                    job.result.complete(own);
+                } else {
+                    run(job);
+                }
+                offset += n;
+            }
+        }
+    }
+
+    /**
+     * Return the number of jobs waiting for a worker.
+     */
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,346 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cube-and-conquer for hard coloring instances.
+ *
+ * The cube phase fixes the colors of the highest-degree open vertices, one
+ * vertex at a time, and uses unit propagation on the encoded CNF as a
+ * lookahead to drop partial assignments that already fail. Each surviving
+ * cube is a set of assumptions. The conquer phase hands the cubes to a
+ * work-stealing fork-join pool. Every pool thread keeps one incremental
+ * solver loaded with the CNF, either in-process or a SolverPool worker
+ * process standing in for a separate node, and solves cube after cube on
+ * it. The first satisfiable cube stops everything else; the instance is
+ * unsatisfiable once every cube is.
+ */
+public class CubeAndConquer {
+
+    public static final int CUBES_PER_THREAD = 8;
+    public static final int MAX_CUBE_VERTICES = 12;
+
+    /**
+     * Solves cubes against one copy of the formula.
+     */
+    private interface Conqueror {
+
+        Solver.Result solve(int[] cube) throws IOException, InterruptedException;
+
+        boolean[] model(int variables) throws IOException;
+
+        void interrupt();
+
+        void close(boolean healthy);
+    }
+
+    private final SatColoring.Encoding enc;
+    private final int threads;
+    private final boolean processes;
+    private final AtomicReference<int[]> found = new AtomicReference<int[]>();
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    private final Map<Thread, Conqueror> conquerors = new ConcurrentHashMap<Thread, Conqueror>();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean done = false;
+
+    private CubeAndConquer(SatColoring.Encoding enc, int threads, boolean processes) {
+        this.enc = enc;
+        this.threads = threads;
+        this.processes = processes;
+    }
+
+    /**
+     * Return the colors of a proper coloring, or null if there is none.
+     * With processes set, cubes are solved by SolverPool workers instead of
+     * in-process solvers.
+     */
+    public static int[] solve(ColoringProblem problem, int threads, boolean processes)
+            throws IOException, InterruptedException {
+        SatColoring.Encoding enc = SatColoring.encode(problem, !processes || SolverPool.shared().takesGraphs());
+        if (enc.isConflict()) {
+            return null;
+        }
+        if (enc.getCnf().getVariables() == 0) {
+            return enc.decode(new boolean[1]);
+        }
+        if (processes) {
+            // a thread waiting for a worker would hold its queued cubes hostage
+            threads = Math.min(threads, SolverPool.shared().getSize());
+        }
+        return new CubeAndConquer(enc, Math.max(1, threads), processes).run();
+    }
+
+    /*
+     * Waits on the finished latch, which the first SAT cube, the first
+     * failure or the last cube opens. Conquerors are only closed once every
+     * pool thread has stopped, so none can be added behind the close loop.
+     */
+    private int[] run() throws IOException, InterruptedException {
+        List<int[]> cubes = split();
+        remaining.set(cubes.size());
+        if (cubes.isEmpty()) {
+            finished.countDown();
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        boolean complete = false;
+        try {
+            for (final int[] cube : cubes) {
+                pool.execute(() -> conquer(cube));
+            }
+            finished.await();
+            complete = found.get() == null && failure.get() == null;
+        } finally {
+            if (!complete) {
+                stop();
+            }
+            pool.shutdownNow();
+            awaitTermination(pool);
+            for (Conqueror c : conquerors.values()) {
+                c.close(complete);
+            }
+        }
+
+        if (found.get() != null) {
+            return found.get();
+        }
+        if (failure.get() != null) {
+            throw new IOException("A cube could not be solved", failure.get());
+        }
+        return null;
+    }
+
+    private void stop() {
+        done = true;
+        finished.countDown();
+        for (Conqueror c : conquerors.values()) {
+            c.interrupt();
+        }
+    }
+
+    private static void awaitTermination(ForkJoinPool pool) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cube phase: enumerate color assignments of the highest-degree open
+     * vertices that survive unit propagation.
+     */
+    private List<int[]> split() {
+        ColoringProblem problem = enc.getProblem();
+        Integer[] open = new Integer[problem.getVertices()];
+        int n = 0;
+        for (int v = 0; v < problem.getVertices(); v++) {
+            if (enc.isOpen(v)) {
+                open[n++] = v;
+            }
+        }
+        Integer[] order = Arrays.copyOf(open, n);
+        Arrays.sort(order, (a, b) -> problem.degree(b) - problem.degree(a));
+
+        long target = (long) CUBES_PER_THREAD * threads;
+        int depth = 0;
+        for (long product = 1; depth < Math.min(order.length, MAX_CUBE_VERTICES) && product < target; depth++) {
+            product *= Long.bitCount(enc.domain(order[depth]));
+        }
+
+        Solver lookahead = new Solver();
+        enc.load(lookahead);
+        List<int[]> cubes = new ArrayList<int[]>();
+        extend(lookahead, order, depth, new int[depth], 0, cubes);
+        return cubes;
+    }
+
+    private void extend(Solver lookahead, Integer[] order, int depth, int[] cube, int i, List<int[]> cubes) {
+        if (i == depth) {
+            cubes.add(cube.clone());
+            return;
+        }
+        int v = order[i];
+        long colors = enc.domain(v);
+        while (colors != 0) {
+            int c = Long.numberOfTrailingZeros(colors);
+            colors &= colors - 1;
+            cube[i] = enc.variable(v, c);
+            if (lookahead.consistent(Arrays.copyOf(cube, i + 1))) {
+                extend(lookahead, order, depth, cube, i + 1, cubes);
+            }
+        }
+    }
+
+    /**
+     * Conquer phase for one cube, run on a pool thread.
+     */
+    private void conquer(int[] cube) {
+        try {
+            if (!done) {
+                solveCube(cube);
+            }
+        } finally {
+            if (remaining.decrementAndGet() == 0) {
+                finished.countDown();
+            }
+        }
+    }
+
+    private void solveCube(int[] cube) {
+        try {
+            Conqueror c = conquerors.get(Thread.currentThread());
+            if (c == null) {
+                c = processes ? new ProcessConqueror() : new LocalConqueror();
+                conquerors.put(Thread.currentThread(), c);
+                // stop() may have run while c was being built
+                if (done) {
+                    c.interrupt();
+                }
+            }
+            Solver.Result result = c.solve(cube);
+            if (result == Solver.Result.SAT) {
+                int[] colors = enc.decode(c.model(enc.getCnf().getVariables()));
+                if (found.compareAndSet(null, colors)) {
+                    stop();
+                }
+            }
+        } catch (Exception e) {
+            // after an early finish, interrupted workers fail on purpose
+            if (!done && failure.compareAndSet(null, e)) {
+                stop();
+            }
+        }
+    }
+
+    private class LocalConqueror implements Conqueror {
+
+        private final Solver solver = new Solver();
+
+        LocalConqueror() {
+            enc.load(solver);
+        }
+
+        public Solver.Result solve(int[] cube) {
+            return solver.solve(cube);
+        }
+
+        public boolean[] model(int variables) {
+            boolean[] model = new boolean[variables + 1];
+            for (int v = 1; v <= variables; v++) {
+                model[v] = solver.value(v);
+            }
+            return model;
+        }
+
+        public void interrupt() {
+            solver.interrupt();
+        }
+
+        public void close(boolean healthy) {
+        }
+    }
+
+    /*
+     * A worker process cannot be interrupted through the protocol, so an
+     * early finish kills it instead of returning it to the pool.
+     */
+    private class ProcessConqueror implements Conqueror {
+
+        private final SolverPool.Worker worker;
+        private volatile boolean killed = false;
+
+        ProcessConqueror() throws IOException, InterruptedException {
+            worker = SolverPool.shared().borrow();
+            try {
+                worker.add(enc.getCnf());
+                if (enc.getPropagator() != null) {
+                    worker.add(enc.getPropagator());
+                }
+            } catch (IOException | RuntimeException e) {
+                SolverPool.shared().release(worker, false);
+                throw e;
+            }
+        }
+
+        public Solver.Result solve(int[] cube) throws IOException, InterruptedException {
+            return worker.solve(cube);
+        }
+
+        public boolean[] model(int variables) throws IOException {
+            return worker.model(variables);
+        }
+
+        public void interrupt() {
+            killed = true;
+            worker.destroy();
+        }
+
+        public void close(boolean healthy) {
+            healthy &= !killed;
+            try {
+                if (healthy) {
+                    worker.reset();
+                }
+            } catch (IOException e) {
+                healthy = false;
+            }
+            SolverPool.shared().release(worker, healthy);
+        }
+    }
+
+    /**
+     * Usage: java CubeAndConquer k edge-file [threads] [--processes]. The
+     * edge file is read as in ColoringCli.
+     */
+    public static void main(String[] args) throws Exception {
+        String usage = "Usage: java CubeAndConquer k edge-file [threads] [--processes]";
+        if (args.length < 2) {
+            ColoringCli.usage(usage, null);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 2 && !args[2].startsWith("--")) {
+            try {
+                threads = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                ColoringCli.usage(usage, "threads must be a whole number, got \"" + args[2] + "\"");
+            }
+        }
+        boolean processes = Arrays.asList(args).contains("--processes");
+        ColoringProblem problem = null;
+        try {
+            problem = ColoringCli.readProblem(ColoringCli.parseColors(args[0]), args[1]);
+        } catch (IllegalArgumentException e) {
+            ColoringCli.usage(usage, e.getMessage());
+        }
+
+        long start = System.currentTimeMillis();
+        int[] colors = solve(problem, threads, processes);
+        System.err.println("Solved in " + (System.currentTimeMillis() - start) + " ms");
+        if (colors == null) {
+            System.out.println("UNSAT");
+        } else {
+            System.out.println("SAT");
+            for (int v = 0; v < colors.length; v++) {
+                System.out.println(v + " " + colors[v]);
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,249 @@
+import java.awt.image.RenderedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes formulas, colorings and pictures to files for other tools. All
+ * text is UTF-8 (in fact ASCII) and goes through one fixed-size buffer
+ * straight into a file channel, so memory use doesn't grow with the
+ * instance: numbers are formatted into the buffer without building strings,
+ * and a Cnf is read literal by literal from its arena.
+ *
+ * A path ending in ".gz", in any case, is gzip-compressed. The JDK has no
+ * xz encoder, so ".xz" is refused; pipe a plain file through xz instead.
+ */
+public class Exporter {
+
+    private static final int BUFFER = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+    private final byte[] digits = new byte[11];
+
+    private Exporter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Write cnf in DIMACS format.
+     */
+    public static void writeDimacs(Cnf cnf, Path path) throws IOException {
+        Exporter out = open(path);
+        try {
+            out.dimacs(cnf);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the CNF of enc in DIMACS format, after comment lines that map
+     * variables back to the graph: "c v c1:x1 c2:x2 ..." says variable x1
+     * means vertex v has color c1. Vertices without variables are left out.
+     */
+    public static void writeDimacs(SatColoring.Encoding enc, Path path) throws IOException {
+        Exporter out = open(path);
+        try {
+            ColoringProblem problem = enc.getProblem();
+            out.ascii("c vertex color:variable ...\n");
+            for (int v = 0; v < problem.getVertices(); v++) {
+                if (!enc.isOpen(v)) {
+                    continue;
+                }
+                out.ascii("c ").number(v);
+                for (int c = 0; c < problem.getColors(); c++) {
+                    int var = enc.variable(v, c);
+                    if (var != 0) {
+                        out.ascii(" ").number(c).ascii(":").number(var);
+                    }
+                }
+                out.ascii("\n");
+            }
+            out.dimacs(enc.getCnf());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write colors as CSV, one "vertex,color" line per vertex, with -1 for
+     * vertices without a color.
+     */
+    public static void writeCsv(int[] colors, Path path) throws IOException {
+        Exporter out = open(path);
+        try {
+            out.ascii("vertex,color\n");
+            for (int v = 0; v < colors.length; v++) {
+                out.number(v).ascii(",").number(colors[v]).ascii("\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write colors as {"colors": [...]}, the shape ColoringServer answers
+     * with, using -1 for vertices without a color.
+     */
+    public static void writeJson(int[] colors, Path path) throws IOException {
+        Exporter out = open(path);
+        try {
+            out.ascii("{\"colors\": [");
+            for (int v = 0; v < colors.length; v++) {
+                if (v > 0) {
+                    out.ascii(", ");
+                }
+                out.number(colors[v]);
+            }
+            out.ascii("]}\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write colors as big-endian 32-bit ints, the vertex count first, as
+     * DataInputStream.readInt() reads them back.
+     */
+    public static void writeBinary(int[] colors, Path path) throws IOException {
+        Exporter out = open(path);
+        try {
+            out.binary(colors.length);
+            for (int c : colors) {
+                out.binary(c);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write image as a PNG file.
+     */
+    public static void writePng(RenderedImage image, Path path) throws IOException {
+        Exporter out = open(path);
+        try {
+            out.flush();
+            OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out.channel), BUFFER);
+            if (!ImageIO.write(image, "png", stream)) {
+                throw new IOException("No PNG writer available");
+            }
+            stream.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Return the file name of path in lower case and without ".gz", so that
+     * callers pick the format from the same name open() compresses by.
+     */
+    public static String formatName(Path path) {
+        String name = lowerName(path);
+        return name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    private static String lowerName(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static Exporter open(Path path) throws IOException {
+        String name = lowerName(path);
+        if (name.endsWith(".xz")) {
+            String plain = path.getFileName().toString();
+            throw new IOException("xz is not supported; write " + plain.substring(0, plain.length() - 3)
+                    + " and compress it with xz");
+        }
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (!name.endsWith(".gz")) {
+            return new Exporter(file);
+        }
+        try {
+            return new Exporter(Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(file), BUFFER)));
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void dimacs(Cnf cnf) throws IOException {
+        ascii("p cnf ").number(cnf.getVariables()).ascii(" ").number(cnf.getClauses()).ascii("\n");
+        boolean lineStart = true;
+        for (int i = 0; i < cnf.getSize(); i++) {
+            int lit = cnf.get(i);
+            if (!lineStart) {
+                ascii(" ");
+            }
+            number(lit);
+            lineStart = lit == 0;
+            if (lineStart) {
+                ascii("\n");
+            }
+        }
+    }
+
+    private Exporter ascii(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        room(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    private Exporter number(int x) throws IOException {
+        room(digits.length);
+        long rest = x;
+        if (rest < 0) {
+            buffer.put((byte) '-');
+            rest = -rest;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        while (n > 0) {
+            buffer.put(digits[--n]);
+        }
+        return this;
+    }
+
+    private void binary(int x) throws IOException {
+        room(4);
+        buffer.putInt(x);
+    }
+
+    private void room(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
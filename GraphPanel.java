@@ -1,14 +1,18 @@
 import java.awt.*;
 import java.awt.event.*;
-import java.io.File;
-import java.io.FileWriter;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Random;
-import java.util.Scanner;
+import java.util.Set;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -23,6 +27,8 @@ public class GraphPanel extends JComponent {
     private static final int HIGH = 480;
     private static final int RADIUS = 25;
     private static final int NUM_COLOR = 3;
+    private static final int MAX_HISTORY = 100;
+    private static final int FRAME_MS = 40;
     private static final Random rnd = new Random();
 
 
@@ -33,11 +39,20 @@ public class GraphPanel extends JComponent {
     private List<Node> nodes = new ArrayList<Node>();
     private List<Node> selected = new ArrayList<Node>();
     private List<Edge> edges = new ArrayList<Edge>();
+    private ConflictTracker conflicts = new ConflictTracker();
+    private CommandLog history = new CommandLog();
     private Point mousePt = new Point(WIDE / 2, HIGH / 2);
+    private Point dragged = new Point();
     private Rectangle mouseRect = new Rectangle();
     private boolean selecting = false;
+    private SolveWorker solving = null;
 
+    /**
+     * Show the editor. With -Dcoloring.exitAfterStartup=true the JVM exits as
+     * soon as the window is up, for build.sh and StartupBenchmark.
+     */
     public static void main(String[] args) throws Exception {
+        SatColoring.warmUp();
         EventQueue.invokeLater(new Runnable() {
 
             public void run() {
@@ -50,6 +65,9 @@ public class GraphPanel extends JComponent {
                 f.pack();
                 f.setLocationByPlatform(true);
                 f.setVisible(true);
+                if (Boolean.getBoolean("coloring.exitAfterStartup")) {
+                    System.exit(0);
+                }
             }
         });
     }
@@ -58,6 +76,12 @@ public class GraphPanel extends JComponent {
         this.setOpaque(true);
         this.addMouseListener(new MouseHandler());
         this.addMouseMotionListener(new MouseMotionHandler());
+
+        InputMap im = this.getInputMap(WHEN_IN_FOCUSED_WINDOW);
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        this.getActionMap().put("undo", control.undo);
+        this.getActionMap().put("redo", control.redo);
     }
 
     @Override
@@ -85,6 +109,11 @@ public class GraphPanel extends JComponent {
 
         @Override
         public void mouseReleased(MouseEvent e) {
+            if (!selecting && (dragged.x != 0 || dragged.y != 0)) {
+                Node.getSelected(nodes, selected);
+                history.record(new MoveCommand(selected, dragged.x, dragged.y));
+            }
+            dragged.setLocation(0, 0);
             selecting = false;
             mouseRect.setBounds(0, 0, 0, 0);
             if (e.isPopupTrigger()) {
@@ -111,7 +140,7 @@ public class GraphPanel extends JComponent {
         }
 
         private void showPopup(MouseEvent e) {
-            control.popup.show(e.getComponent(), e.getX(), e.getY());
+            control.popup().show(e.getComponent(), e.getX(), e.getY());
         }
     }
 
@@ -128,6 +157,7 @@ public class GraphPanel extends JComponent {
             } else {
                 delta.setLocation(e.getX() - mousePt.x, e.getY() - mousePt.y);
                 Node.updatePosition(nodes, delta);
+                dragged.translate(delta.x, delta.y);
                 mousePt = e.getPoint();
             }
             e.getComponent().repaint();
@@ -144,15 +174,21 @@ public class GraphPanel extends JComponent {
         private Action clearAll = new ClearAction("Clear");
         private Action kind = new KindComboAction("Kind");
         private Action color = new ColorAction("Color");
-        private Action connect = new ConnectAction("Connect");
-        private Action delete = new DeleteAction("Delete");
         private Action random = new RandomAction("Random");
         private Action run = new RunAction("Run");
+        private Action greedy = new GreedyAction("Greedy");
+        private Action export = new ExportAction("Export");
         private Action help = new HelpAction("Help");
+        private Action undo = new UndoAction("Undo");
+        private Action redo = new RedoAction("Redo");
         private JButton defaultButton = new JButton(newNode);
         private JComboBox kindCombo = new JComboBox();
         private ColorIcon hueIcon = new ColorIcon(Node.NONE_COLOR);
-        private JPopupMenu popup = new JPopupMenu();
+        private JLabel conflictLabel = new JLabel("Conflicts: 0");
+        private JCheckBox minConflicts = new JCheckBox("Min conflicts");
+        private JSpinner numColorSpinner = new JSpinner();
+        private List<Action> edits = new ArrayList<Action>(Arrays.asList(newNode, clearAll, color, random, greedy));
+        private JPopupMenu popup;
 
         /*
          * Control Panel constructor. Unused feature is commented.
@@ -163,6 +199,10 @@ public class GraphPanel extends JComponent {
 
             this.add(defaultButton);
             this.add(new JButton(clearAll));
+            this.add(new JButton(undo));
+            this.add(new JButton(redo));
+            undo.setEnabled(false);
+            redo.setEnabled(false);
 
             // this.add(kindCombo);
 
@@ -184,12 +224,12 @@ public class GraphPanel extends JComponent {
             // this.add(new JLabel("Size:"));
             // this.add(js);
 
-            JSpinner js = new JSpinner();
-            js.setModel(new SpinnerNumberModel(NUM_COLOR, 1, 8, 1));
-            js.addChangeListener(new ChangeListener() {
+            numColorSpinner.setModel(new SpinnerNumberModel(NUM_COLOR, 1, 8, 1));
+            numColorSpinner.addChangeListener(new ChangeListener() {
                 @Override
                 public void stateChanged(ChangeEvent e) {
                     JSpinner s = (JSpinner) e.getSource();
+                    int previous = numColor;
                     numColor = (Integer) s.getValue();
                     for (int i = 0; i < nodes.size(); i++) {
                         Node node = nodes.get(i);
@@ -198,10 +238,15 @@ public class GraphPanel extends JComponent {
                         // System.out.println(pos);
 
                         if (pos >= numColor) {
-                            node.setColor(null);
+                            conflicts.recolor(node, null);
                         }
                     }
 
+                    // older commands may put back colors beyond numColor
+                    if (numColor < previous) {
+                        history.clear();
+                    }
+
                     int huePos = Arrays.asList(Node.POSSIBLE_COLORS).indexOf(control.hueIcon.getColor());
 
                     if (huePos >= numColor) {
@@ -213,16 +258,37 @@ public class GraphPanel extends JComponent {
                 }
             });
             this.add(new JLabel("Num Color:"));
-            this.add(js);
+            this.add(numColorSpinner);
 
             this.add(new JButton(random));
+            this.add(new JButton(greedy));
             this.add(new JButton(run));
+            this.add(minConflicts);
+            this.add(new JButton(export));
             this.add(new JButton(help));
+            this.add(conflictLabel);
+        }
 
+        /**
+         * Build the right-click menu and its actions on first use; startup
+         * only creates what the toolbar shows.
+         */
+        JPopupMenu popup() {
+            if (popup != null) {
+                return popup;
+            }
+            List<Action> more = Arrays.<Action>asList(new AllowAction("Allowed colors"), new ConnectAction("Connect"),
+                    new WeightAction("Weight"), new DeleteAction("Delete"));
+            for (Action a : more) {
+                a.setEnabled(solving == null);
+            }
+            edits.addAll(more);
+            popup = new JPopupMenu();
             popup.add(new JMenuItem(newNode));
             popup.add(new JMenuItem(color));
-            popup.add(new JMenuItem(connect));
-            popup.add(new JMenuItem(delete));
+            for (Action a : more) {
+                popup.add(new JMenuItem(a));
+            }
 
             // JMenu subMenu = new JMenu("Kind");
             // for (Kind k : Kind.values()) {
@@ -231,6 +297,20 @@ public class GraphPanel extends JComponent {
             // }
             // popup.add(subMenu);
             // kindCombo.addActionListener(kind);
+            return popup;
+        }
+
+        /**
+         * Turn every action that changes the graph, its colors or the
+         * history on or off. A running solve owns them, since its result
+         * is recorded against the graph as it was at the start.
+         */
+        void setEditable(boolean editable) {
+            for (Action a : edits) {
+                a.setEnabled(editable);
+            }
+            numColorSpinner.setEnabled(editable);
+            history.changed();
         }
 
         class KindItemAction extends AbstractAction {
@@ -256,9 +336,7 @@ public class GraphPanel extends JComponent {
         }
 
         public void actionPerformed(ActionEvent e) {
-            nodes.clear();
-            edges.clear();
-            Node.indexCounter = 1;
+            history.perform(new ClearCommand());
             repaint();
         }
     }
@@ -283,7 +361,10 @@ public class GraphPanel extends JComponent {
             );
 
             color = Node.stringToColor(colorString);
-            Node.updateColor(nodes, color);
+            Node.getSelected(nodes, selected);
+            Color[] after = new Color[selected.size()];
+            Arrays.fill(after, color);
+            history.perform(new RecolorCommand(selected, after));
             if (color != null) {
                 control.hueIcon.setColor(color);
             } else {
@@ -294,6 +375,83 @@ public class GraphPanel extends JComponent {
         }
     }
 
+    /**
+     * Restrict the selected nodes to a list of colors.
+     */
+    private class AllowAction extends AbstractAction {
+
+        public AllowAction(String name) {
+            super(name);
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            Node.getSelected(nodes, selected);
+            if (selected.isEmpty()) {
+                return;
+            }
+
+            JPanel boxes = new JPanel(new GridLayout(0, 1));
+            JCheckBox[] checks = new JCheckBox[numColor];
+            for (int i = 0; i < numColor; i++) {
+                checks[i] = new JCheckBox(Node.POSSIBLE_COLORS_STRING[i + 1],
+                        (selected.get(0).allowed & (1L << i)) != 0);
+                boxes.add(checks[i]);
+            }
+            int answer = JOptionPane.showConfirmDialog(GraphPanel.this, boxes, "Allowed colors",
+                    JOptionPane.OK_CANCEL_OPTION);
+            if (answer != JOptionPane.OK_OPTION) {
+                return;
+            }
+
+            long mask = Node.ALL_ALLOWED;
+            for (int i = 0; i < numColor; i++) {
+                if (!checks[i].isSelected()) {
+                    mask &= ~(1L << i);
+                }
+            }
+            history.perform(new AllowCommand(selected, mask));
+            repaint();
+        }
+    }
+
+    /**
+     * Set the weight of every edge between two selected nodes.
+     */
+    private class WeightAction extends AbstractAction {
+
+        public WeightAction(String name) {
+            super(name);
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            List<Edge> chosen = new ArrayList<Edge>();
+            for (Edge edge : edges) {
+                if (edge.n1.isSelected() && edge.n2.isSelected()) {
+                    chosen.add(edge);
+                }
+            }
+            if (chosen.isEmpty()) {
+                return;
+            }
+
+            String answer = JOptionPane.showInputDialog(GraphPanel.this, "Edge weight",
+                    String.valueOf(chosen.get(0).weight));
+            if (answer == null) {
+                return;
+            }
+            try {
+                int w = Integer.parseInt(answer.trim());
+                if (w < 0) {
+                    throw new NumberFormatException();
+                }
+                history.perform(new WeightCommand(chosen, w));
+                repaint();
+            } catch (NumberFormatException e1) {
+                JOptionPane.showMessageDialog(GraphPanel.this, "Weight must be a whole number of at least 0");
+            }
+        }
+    }
+
     private class ConnectAction extends AbstractAction {
 
         public ConnectAction(String name) {
@@ -302,16 +460,20 @@ public class GraphPanel extends JComponent {
 
         public void actionPerformed(ActionEvent e) {
             Node.getSelected(nodes, selected);
+            List<Edge> added = new ArrayList<Edge>();
             if (selected.size() > 1) {
                 for (int i = 0; i < selected.size() - 1; ++i) {
                     Node n1 = selected.get(i);
                     Node n2 = selected.get(i + 1);
 
                     if (newEdge(n1, n2)) {
-                        edges.add(new Edge(n1, n2));
+                        added.add(new Edge(n1, n2));
                     }
                 }
             }
+            if (!added.isEmpty()) {
+                history.perform(new AddEdgesCommand(added));
+            }
             repaint();
         }
 
@@ -335,26 +497,12 @@ public class GraphPanel extends JComponent {
         }
 
         public void actionPerformed(ActionEvent e) {
-            ListIterator<Node> iter = nodes.listIterator();
-            while (iter.hasNext()) {
-                Node n = iter.next();
-                if (n.isSelected()) {
-                    deleteEdges(n);
-                    iter.remove();
-                }
+            Node.getSelected(nodes, selected);
+            if (!selected.isEmpty()) {
+                history.perform(new RemoveNodesCommand(selected));
             }
             repaint();
         }
-
-        private void deleteEdges(Node n) {
-            ListIterator<Edge> iter = edges.listIterator();
-            while (iter.hasNext()) {
-                Edge e = iter.next();
-                if (e.n1 == n || e.n2 == n) {
-                    iter.remove();
-                }
-            }
-        }
     }
 
     private class KindComboAction extends AbstractAction {
@@ -388,7 +536,7 @@ public class GraphPanel extends JComponent {
                 n = new Node(p, radius, kind);
             }
             n.setSelected(true);
-            nodes.add(n);
+            history.perform(new AddNodesCommand(Arrays.asList(n)));
             repaint();
         }
     }
@@ -401,28 +549,29 @@ public class GraphPanel extends JComponent {
 
         public void actionPerformed(ActionEvent e) {
             int total = 8;
-            int lastIndex = nodes.size();
+            List<Node> newNodes = new ArrayList<Node>();
+            List<Edge> newEdges = new ArrayList<Edge>();
 
             for (int i = 0; i < total; i++) {
                 Point p = new Point(rnd.nextInt(getWidth()), rnd.nextInt(getHeight()));
-                nodes.add(new Node(p, radius, kind));
+                newNodes.add(new Node(p, radius, kind));
             }
             int maxEdges = (total * (total - 1)) / 2;
             int numEdges = rnd.nextInt(maxEdges) + 1;
 
             int cnt = 0;
             while (cnt < numEdges) {
-                Node n1 = nodes.get(rnd.nextInt(8) + lastIndex);
-                Node n2 = nodes.get(rnd.nextInt(8) + lastIndex);
+                Node n1 = newNodes.get(rnd.nextInt(total));
+                Node n2 = newNodes.get(rnd.nextInt(total));
 
                 if (n1.index == n2.index) {
                     continue;
                 }
 
                 boolean isExists = false;
-                for (int j = 0; j < edges.size(); j++) {
-                    Node fNode = edges.get(j).getFirstNode();
-                    Node sNode = edges.get(j).getSecondNode();
+                for (int j = 0; j < newEdges.size(); j++) {
+                    Node fNode = newEdges.get(j).getFirstNode();
+                    Node sNode = newEdges.get(j).getSecondNode();
 
                     if ((fNode.index == n1.index && sNode.index == n2.index)
                             || (fNode.index == n2.index && sNode.index == n1.index)) {
@@ -432,190 +581,840 @@ public class GraphPanel extends JComponent {
                 }
 
                 if (!isExists) {
-                    edges.add(new Edge(n1, n2));
+                    newEdges.add(new Edge(n1, n2));
                     cnt++;
                 }
             }
+            history.perform(new BatchCommand(new AddNodesCommand(newNodes), new AddEdgesCommand(newEdges)));
             repaint();
         }
     }
 
     private class RunAction extends AbstractAction {
-        private StringBuilder strBuilder;
-        private int clauses;
-        private int literals;
 
         public RunAction(String name) {
             super(name);
         }
 
         public void actionPerformed(ActionEvent e) {
-            boolean check = CheckMiniSat();
-            if (!check) {
+            if (solving != null) {
+                solving.stop();
+                return;
+            }
+            if (nodes.size() == 0) {
+                return;
+            }
+            if (control.minConflicts.isSelected()) {
+                solving = new MinConflictWorker();
+                solving.start();
+                return;
+            }
+
+            if (SatColoring.usesMiniSat() && !MiniSat.available()) {
                 String msg = "You don't have minisat :(\nPlease install minisat";
                 JOptionPane.showMessageDialog(GraphPanel.this, msg);
 
                 return;
             }
 
-            strBuilder = new StringBuilder();
+            solving = new ExactWorker();
+            solving.start();
+        }
+    }
+
+    /**
+     * Color the canvas with the parallel greedy engine. This is quick, but it
+     * may need more colors than numColor; the SAT path then tightens the
+     * result in the background.
+     */
+    private class GreedyAction extends AbstractAction {
 
+        public GreedyAction(String name) {
+            super(name);
+        }
+
+        public void actionPerformed(ActionEvent e) {
             if (nodes.size() == 0) {
                 return;
             }
 
-            literals = (nodes.get(nodes.size() - 1).index - 1) * numColor + numColor;
-            clauses = 0;
+            int[] colors = ParallelColoring.color(toProblem());
+            if (ParallelColoring.colorsUsed(colors) > numColor) {
+                if (SatColoring.usesMiniSat() && !MiniSat.available()) {
+                    String msg = "You don't have minisat :(\nPlease install minisat";
+                    JOptionPane.showMessageDialog(GraphPanel.this, msg);
+                    return;
+                }
+                solving = new TightenWorker(colors);
+                solving.start();
+                return;
+            }
+
+            Color[] after = new Color[colors.length];
+            for (int i = 0; i < after.length; i++) {
+                after[i] = Node.POSSIBLE_COLORS[colors[i]];
+            }
+            history.perform(new RecolorCommand(nodes, after));
+            repaint();
+        }
+    }
+
+    /**
+     * Runs a solve in the background while the canvas follows its progress.
+     * Engines publish to a ColoringChannel and a timer shows the latest
+     * snapshot every FRAME_MS, with one repaint per frame however many
+     * snapshots arrived in between. Only the final coloring goes into the
+     * undo history, so editing and undo are off until the solve is done.
+     * Pressing Run again stops the solve; a stopped solve keeps the latest
+     * snapshot only if it is a proper coloring.
+     */
+    private abstract class SolveWorker extends SwingWorker<int[], Void> {
+
+        protected final ColoringProblem problem = toProblem();
+        protected final ColoringChannel channel = new ColoringChannel();
+        private List<Node> solved = new ArrayList<Node>(nodes);
+        private Color[] before = new Color[solved.size()];
+        private int shown = 0;
+        private Timer frames = new Timer(FRAME_MS, new ActionListener() {
+
+            public void actionPerformed(ActionEvent e) {
+                showLatest();
+            }
+        });
+
+        SolveWorker() {
+            for (int i = 0; i < before.length; i++) {
+                before[i] = solved.get(i).getColor();
+            }
+        }
+
+        void start() {
+            control.setEditable(false);
+            control.run.putValue(Action.NAME, "Stop");
+            frames.start();
+            execute();
+        }
+
+        /**
+         * Stop the search; the worker then finishes with what it has.
+         */
+        abstract void stop();
+
+        /**
+         * Tell the user why the solve ended without a coloring.
+         */
+        abstract void failed();
+
+        private void showLatest() {
+            ColoringChannel.Snapshot snapshot = channel.latest();
+            if (snapshot == null || snapshot.getVersion() == shown) {
+                return;
+            }
+            shown = snapshot.getVersion();
+            Color[] colors = toColors(snapshot.getColors());
+            for (int i = 0; i < colors.length; i++) {
+                conflicts.recolor(solved.get(i), colors[i]);
+            }
+            repaint();
+        }
+
+        private Color[] toColors(int[] colors) {
+            Color[] result = new Color[colors.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = colors[i] == ColoringProblem.FREE ? before[i] : Node.POSSIBLE_COLORS[colors[i]];
+            }
+            return result;
+        }
+
+        @Override
+        protected void done() {
+            frames.stop();
+            solving = null;
+            control.run.putValue(Action.NAME, "Run");
+            int[] colors = null;
+            boolean broken = false;
+            if (isCancelled()) {
+                ColoringChannel.Snapshot snapshot = channel.latest();
+                if (snapshot != null && LocalSearchColoring.violations(problem, snapshot.getColors()) == 0) {
+                    colors = snapshot.getColors();
+                }
+            } else {
+                try {
+                    colors = get();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    broken = true;
+                }
+            }
+
+            for (int i = 0; i < before.length; i++) {
+                conflicts.recolor(solved.get(i), before[i]);
+            }
+            control.setEditable(true);
+            if (colors != null) {
+                history.perform(new RecolorCommand(solved, toColors(colors)));
+            } else if (isCancelled()) {
+                JOptionPane.showMessageDialog(GraphPanel.this, "The solve was stopped before it found a coloring.");
+            } else if (!broken) {
+                failed();
+            }
+            repaint();
+        }
+    }
+
+    /**
+     * The exact SAT solve. Meanwhile the greedy engine and then local search
+     * publish their best colorings, so big graphs show something at once.
+     */
+    private class ExactWorker extends SolveWorker {
+
+        private LocalSearchColoring local = new LocalSearchColoring(problem);
+
+        @Override
+        protected int[] doInBackground() throws IOException, InterruptedException {
+            Thread heuristics = new Thread(new Runnable() {
+
+                public void run() {
+                    int[] colors = ParallelColoring.color(problem);
+                    for (int i = 0; i < colors.length; i++) {
+                        if (colors[i] >= problem.getColors() || (problem.allowed(i) & (1L << colors[i])) == 0) {
+                            colors[i] = ColoringProblem.FREE;
+                        }
+                    }
+                    channel.publish(colors, LocalSearchColoring.violations(problem, colors));
+                    local.search(colors, channel, Long.MAX_VALUE);
+                }
+            }, "local-search");
+            heuristics.setDaemon(true);
+            heuristics.start();
+            try {
+                return SatColoring.solve(problem);
+            } finally {
+                local.cancel();
+            }
+        }
+
+        /*
+         * The interrupt reaches SolverPool, which kills the busy worker
+         * process and frees its place in the pool.
+         */
+        void stop() {
+            local.cancel();
+            cancel(true);
+        }
+
+        void failed() {
+            String msg = "Graph can't be colored :(\nTick \"Min conflicts\" to get the fewest conflicts instead.";
+            JOptionPane.showMessageDialog(GraphPanel.this, msg);
+        }
+    }
+
+    /**
+     * Brings a greedy coloring that needs more than numColor colors down
+     * with the SAT path, one color at a time. The colorings in between don't
+     * fit the palette, so the canvas only changes at the end.
+     */
+    private class TightenWorker extends SolveWorker {
+
+        private final int[] greedy;
+        private volatile int needed;
+
+        TightenWorker(int[] greedy) {
+            this.greedy = greedy;
+            this.needed = ParallelColoring.colorsUsed(greedy);
+        }
+
+        @Override
+        protected int[] doInBackground() throws IOException, InterruptedException {
+            int[] colors = ParallelColoring.tighten(problem, greedy, problem.getColors());
+            needed = ParallelColoring.colorsUsed(colors);
+            return needed <= problem.getColors() ? colors : null;
+        }
+
+        void stop() {
+            cancel(true);
+        }
+
+        void failed() {
+            String msg = "The graph needs " + needed + " colors :(";
+            JOptionPane.showMessageDialog(GraphPanel.this, msg);
+        }
+    }
+
+    /**
+     * Searches for the coloring with the lightest conflicting edges. Every
+     * improvement goes to the channel, and stopping keeps the best so far.
+     */
+    private class MinConflictWorker extends SolveWorker {
+
+        private MinConflictColoring search;
+
+        MinConflictWorker() {
+            int[] weights = new int[problem.getEdgeCount()];
+            Map<Node, Integer> position = positions();
+            for (Edge edge : edges) {
+                weights[problem.edgeIndex(position.get(edge.n1), position.get(edge.n2))] += edge.weight;
+            }
+            search = new MinConflictColoring(problem, weights);
+        }
+
+        @Override
+        protected int[] doInBackground() {
+            return search.solve(new MinConflictColoring.Listener() {
+
+                public void improved(int[] colors, long cost) {
+                    channel.publish(colors, cost);
+                }
+            });
+        }
+
+        void stop() {
+            search.cancel();
+        }
+
+        void failed() {
+            JOptionPane.showMessageDialog(GraphPanel.this, "Some node has no allowed color :(");
+        }
+    }
+
+    /**
+     * Save the canvas. The file name picks the format: .cnf for the SAT
+     * encoding of the graph with numColor colors, ignoring node colors and
+     * allowed lists, .csv, .json or .bin for the node colors and .png for a
+     * picture. Adding .gz compresses the file.
+     */
+    private class ExportAction extends AbstractAction {
+
+        public ExportAction(String name) {
+            super(name);
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showSaveDialog(GraphPanel.this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            Path path = chooser.getSelectedFile().toPath();
+            String name = Exporter.formatName(path);
 
             try {
-                if (SATSolverHelper()) {
-                    repaint();
+                if (name.endsWith(".cnf")) {
+                    SatColoring.Encoding enc = SatColoring.encode(toProblem(false));
+                    if (enc.isConflict()) {
+                        JOptionPane.showMessageDialog(GraphPanel.this, "Graph can't be colored, so there is no CNF :(");
+                        return;
+                    }
+                    Exporter.writeDimacs(enc, path);
+                } else if (name.endsWith(".csv")) {
+                    Exporter.writeCsv(paletteColors(), path);
+                } else if (name.endsWith(".json")) {
+                    Exporter.writeJson(paletteColors(), path);
+                } else if (name.endsWith(".bin")) {
+                    Exporter.writeBinary(paletteColors(), path);
+                } else if (name.endsWith(".png")) {
+                    BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+                    Graphics2D g = image.createGraphics();
+                    paint(g);
+                    g.dispose();
+                    Exporter.writePng(image, path);
                 } else {
-                    String msg = "Graph can't be colored :(";
+                    String msg = "Please end the file name with .cnf, .csv, .json, .bin or .png";
                     JOptionPane.showMessageDialog(GraphPanel.this, msg);
                 }
             } catch (IOException e1) {
-                e1.printStackTrace();
+                JOptionPane.showMessageDialog(GraphPanel.this, "Export failed: " + e1.getMessage());
             }
         }
+    }
 
-        private boolean SATSolverHelper() throws IOException {
-            adjacentNodesHandler();
-            nodeHasColorHandler();
-            nodeHasOneColorHandler();
-            coloredNodesHandler();
+    /**
+     * Return each node's color as an index into the first numColor colors,
+     * or ColoringProblem.FREE if it has none of them.
+     */
+    private int[] paletteColors() {
+        List<Color> palette = Arrays.asList(Node.POSSIBLE_COLORS).subList(0, numColor);
+        int[] colors = new int[nodes.size()];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = palette.indexOf(nodes.get(i).getColor());
+        }
+        return colors;
+    }
 
-            strBuilder.insert(0, String.format("p cnf %d %d\n", literals, clauses));
+    /**
+     * Return each node's position in the node list.
+     */
+    private Map<Node, Integer> positions() {
+        Map<Node, Integer> position = new HashMap<Node, Integer>();
+        for (int i = 0; i < nodes.size(); i++) {
+            position.put(nodes.get(i), i);
+        }
+        return position;
+    }
 
-            FileWriter writer = new FileWriter("in.txt");
-            writer.write(strBuilder.toString());
-            writer.close();
+    /**
+     * Describe the canvas as a coloring problem. Vertex i is the i-th node in
+     * the list and node colors beyond numColor are ignored.
+     */
+    private ColoringProblem toProblem() {
+        return toProblem(true);
+    }
 
-            ExecuteMiniSat();
+    /**
+     * Like toProblem(), but without node colors and allowed lists unless
+     * constrained is set, i.e. just the graph and numColor.
+     */
+    private ColoringProblem toProblem(boolean constrained) {
+        Map<Node, Integer> position = positions();
+        int[] pinned = null;
+        long[] allowed = null;
+        if (constrained) {
+            pinned = paletteColors();
+            allowed = new long[nodes.size()];
+            for (int i = 0; i < nodes.size(); i++) {
+                allowed[i] = nodes.get(i).allowed;
+            }
+        }
 
-            File file = new File("out.txt");
-            Scanner reader = new Scanner(file);
+        int[] ends = new int[2 * edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            ends[2 * i] = position.get(edges.get(i).n1);
+            ends[2 * i + 1] = position.get(edges.get(i).n2);
+        }
+        return new ColoringProblem(nodes.size(), numColor, ends, pinned, allowed);
+    }
 
-            String answers = "";
+    /**
+     * Keeps the set of monochromatic edges and each node's conflict count up to
+     * date. Every change only walks the incident edges of the touched node, so
+     * a manual recolour costs O(deg) instead of a full scan of the graph.
+     */
+    private class ConflictTracker {
 
-            while (reader.hasNextLine()) {
-                answers = reader.nextLine();
-                // System.out.println(answers);
+        private Set<Edge> conflicting = new HashSet<Edge>();
 
-                if (answers.equals("UNSAT")) {
-                    reader.close();
-                    return false;
+        /**
+         * Register a new edge with its end nodes.
+         */
+        public void connect(Edge e) {
+            e.n1.incident.add(e);
+            e.n2.incident.add(e);
+            if (e.isMonochromatic()) {
+                mark(e);
+            }
+            changed();
+        }
+
+        /**
+         * Forget an edge that has been removed from the graph.
+         */
+        public void disconnect(Edge e) {
+            e.n1.incident.remove(e);
+            e.n2.incident.remove(e);
+            unmark(e);
+            changed();
+        }
+
+        /**
+         * Give node a new color and re-check only its incident edges.
+         */
+        public void recolor(Node node, Color color) {
+            for (Edge e : node.incident) {
+                unmark(e);
+            }
+            Node.updateColor(node, color);
+            for (Edge e : node.incident) {
+                if (e.isMonochromatic()) {
+                    mark(e);
                 }
             }
+            changed();
+        }
 
-            reader.close();
+        public void clear() {
+            conflicting.clear();
+            changed();
+        }
 
-            String[] arrOfLiterals = answers.split(" ");
-            ArrayList<Integer> colors = new ArrayList<>();
+        public int size() {
+            return conflicting.size();
+        }
 
-            for (String literal : arrOfLiterals) {
-                int lit = Integer.parseInt(literal);
+        private void mark(Edge e) {
+            if (conflicting.add(e)) {
+                e.conflict = true;
+                e.n1.conflicts++;
+                e.n2.conflicts++;
+            }
+        }
 
-                if (lit > 0) {
-                    colors.add(lit);
-                    // System.out.println(">>" + lit);
-                }
+        private void unmark(Edge e) {
+            if (conflicting.remove(e)) {
+                e.conflict = false;
+                e.n1.conflicts--;
+                e.n2.conflicts--;
             }
+        }
 
-            for (int i = 0; i < nodes.size(); i++) {
-                Node node = nodes.get(i);
-                int number = colors.get(i);
-                int colorIndex = number % numColor;
+        private void changed() {
+            control.conflictLabel.setText("Conflicts: " + conflicting.size());
+        }
+    }
 
-                if (colorIndex == 0) {
-                    colorIndex = numColor;
-                }
+    /**
+     * A reversible change to the graph. Commands only hold the nodes, edges and
+     * colors they touch, never a copy of the whole graph.
+     */
+    private interface Command {
+
+        void apply();
 
-                String colorString = Node.POSSIBLE_COLORS_STRING[colorIndex];
-                // System.out.println(colorString);
-                Color color = Node.stringToColor(colorString);
-                Node.updateColor(node, color);
+        void revert();
+    }
+
+    /**
+     * Bounded undo/redo history. All mutations go through the conflict tracker
+     * so replaying a command keeps the incremental state in sync.
+     */
+    private class CommandLog {
+
+        private Deque<Command> undoStack = new ArrayDeque<Command>();
+        private Deque<Command> redoStack = new ArrayDeque<Command>();
+
+        /**
+         * Apply command and remember it.
+         */
+        public void perform(Command c) {
+            c.apply();
+            record(c);
+        }
+
+        /**
+         * Remember a command whose effect is already visible.
+         */
+        public void record(Command c) {
+            undoStack.push(c);
+            if (undoStack.size() > MAX_HISTORY) {
+                undoStack.removeLast();
             }
+            redoStack.clear();
+            changed();
+        }
 
-            return true;
+        /**
+         * Forget every command, e.g. when they no longer fit the graph.
+         */
+        public void clear() {
+            undoStack.clear();
+            redoStack.clear();
+            changed();
+        }
+
+        public void undo() {
+            if (!undoStack.isEmpty()) {
+                Command c = undoStack.pop();
+                c.revert();
+                redoStack.push(c);
+                changed();
+            }
         }
 
-        private boolean CheckMiniSat() {
-            try {
-                String[] args = new String[] {"minisat", "-h"};
-                Process proc = new ProcessBuilder(args).start();
-                proc.waitFor();
-            } catch (Exception e) {
-                return false;
+        public void redo() {
+            if (!redoStack.isEmpty()) {
+                Command c = redoStack.pop();
+                c.apply();
+                undoStack.push(c);
+                changed();
             }
+        }
 
-            return true;
+        private void changed() {
+            control.undo.setEnabled(solving == null && !undoStack.isEmpty());
+            control.redo.setEnabled(solving == null && !redoStack.isEmpty());
         }
+    }
 
-        private void adjacentNodesHandler() {
-            // System.out.println(numColor);
-            // System.out.println(edges.size());
-            for (Edge edge : edges) {
-                int index1 = (edge.n1.index - 1) * numColor;
-                int index2 = (edge.n2.index - 1) * numColor;
+    private class AddNodesCommand implements Command {
 
-                for (int i = 1; i <= numColor; i++) {
-                    strBuilder.append(-(index1 + i) + " " + -(index2 + i) + " 0\n");
-                    clauses++;
-                }
+        private Node[] added;
+
+        public AddNodesCommand(List<Node> added) {
+            this.added = added.toArray(new Node[0]);
+        }
+
+        public void apply() {
+            nodes.addAll(Arrays.asList(added));
+        }
+
+        public void revert() {
+            nodes.subList(nodes.size() - added.length, nodes.size()).clear();
+        }
+    }
+
+    private class AddEdgesCommand implements Command {
+
+        private Edge[] added;
+
+        public AddEdgesCommand(List<Edge> added) {
+            this.added = added.toArray(new Edge[0]);
+        }
+
+        public void apply() {
+            for (Edge e : added) {
+                edges.add(e);
+                conflicts.connect(e);
             }
         }
 
-        private void nodeHasColorHandler() {
-            for (Node node : nodes) {
-                int index = (node.index - 1) * numColor;
+        public void revert() {
+            for (int i = added.length - 1; i >= 0; i--) {
+                edges.remove(edges.size() - 1);
+                conflicts.disconnect(added[i]);
+            }
+        }
+    }
 
-                for (int i = 1; i <= numColor; i++) {
-                    strBuilder.append((index + i) + " ");
+    /**
+     * Removes nodes together with their edges, keeping the list positions so
+     * that revert puts everything back in the original order.
+     */
+    private class RemoveNodesCommand implements Command {
+
+        private Node[] removed;
+        private int[] nodePos;
+        private Edge[] removedEdges;
+        private int[] edgePos;
+
+        public RemoveNodesCommand(List<Node> removed) {
+            this.removed = removed.toArray(new Node[0]);
+            this.nodePos = new int[this.removed.length];
+            Map<Node, Integer> position = positions();
+            for (int i = 0; i < this.removed.length; i++) {
+                nodePos[i] = position.get(this.removed[i]);
+            }
+            Arrays.sort(nodePos);
+            for (int i = 0; i < nodePos.length; i++) {
+                this.removed[i] = nodes.get(nodePos[i]);
+            }
+
+            Set<Node> lookup = new HashSet<Node>(removed);
+            List<Edge> gone = new ArrayList<Edge>();
+            List<Integer> pos = new ArrayList<Integer>();
+            for (int i = 0; i < edges.size(); i++) {
+                Edge e = edges.get(i);
+                if (lookup.contains(e.n1) || lookup.contains(e.n2)) {
+                    gone.add(e);
+                    pos.add(i);
                 }
+            }
+            this.removedEdges = gone.toArray(new Edge[0]);
+            this.edgePos = new int[pos.size()];
+            for (int i = 0; i < edgePos.length; i++) {
+                edgePos[i] = pos.get(i);
+            }
+        }
 
-                strBuilder.append("0\n");
-                clauses++;
+        public void apply() {
+            for (int i = removedEdges.length - 1; i >= 0; i--) {
+                edges.remove(edgePos[i]);
+                conflicts.disconnect(removedEdges[i]);
+            }
+            for (int i = removed.length - 1; i >= 0; i--) {
+                nodes.remove(nodePos[i]);
             }
         }
 
-        private void nodeHasOneColorHandler() {
-            for (Node node : nodes) {
-                int index = (node.index - 1) * numColor;
-                for (int i = 1; i < numColor; i++) {
-                    for (int j = i + 1; j <= numColor; j++) {
-                        strBuilder.append(-(index + i) + " " + -(index + j) + " 0\n");
-                        clauses++;
-                    }
-                }
+        public void revert() {
+            for (int i = 0; i < removed.length; i++) {
+                nodes.add(nodePos[i], removed[i]);
+            }
+            for (int i = 0; i < removedEdges.length; i++) {
+                edges.add(edgePos[i], removedEdges[i]);
+                conflicts.connect(removedEdges[i]);
             }
         }
+    }
 
-        private void coloredNodesHandler() {
-            for (Node node : nodes) {
-                for (int i = 0; i < numColor; i++) {
-                    if (node.color == Node.POSSIBLE_COLORS[i]) {
-                        // System.out.println(node.index + " = " + i + " " + ((node.index - 1) * numColor + (i + 1)));
-                        strBuilder.append(((node.index - 1) * numColor + (i + 1)) + " 0\n");
-                        clauses++;
-                    }
-                }
+    /**
+     * Removes every node and restarts the index counter.
+     */
+    private class ClearCommand extends RemoveNodesCommand {
+
+        private int indexCounter = Node.indexCounter;
+
+        public ClearCommand() {
+            super(nodes);
+        }
+
+        @Override
+        public void apply() {
+            super.apply();
+            Node.indexCounter = 1;
+        }
+
+        @Override
+        public void revert() {
+            super.revert();
+            Node.indexCounter = indexCounter;
+        }
+    }
+
+    private class RecolorCommand implements Command {
+
+        private Node[] recolored;
+        private Color[] before;
+        private Color[] after;
+
+        public RecolorCommand(List<Node> recolored, Color[] after) {
+            this.recolored = recolored.toArray(new Node[0]);
+            this.before = new Color[this.recolored.length];
+            for (int i = 0; i < before.length; i++) {
+                before[i] = this.recolored[i].getColor();
             }
+            this.after = after;
         }
 
-        private void ExecuteMiniSat() {
-            try {
-                String[] args = new String[] {"minisat", "in.txt", "out.txt"};
-                Process proc = new ProcessBuilder(args).start();
-                proc.waitFor();
-            } catch (IOException e) {
-                e.printStackTrace();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        public void apply() {
+            for (int i = 0; i < recolored.length; i++) {
+                conflicts.recolor(recolored[i], after[i]);
+            }
+        }
+
+        public void revert() {
+            for (int i = 0; i < recolored.length; i++) {
+                conflicts.recolor(recolored[i], before[i]);
+            }
+        }
+    }
+
+    private class AllowCommand implements Command {
+
+        private Node[] restricted;
+        private long[] before;
+        private long after;
+
+        public AllowCommand(List<Node> restricted, long after) {
+            this.restricted = restricted.toArray(new Node[0]);
+            this.before = new long[this.restricted.length];
+            for (int i = 0; i < before.length; i++) {
+                before[i] = this.restricted[i].allowed;
+            }
+            this.after = after;
+        }
+
+        public void apply() {
+            for (Node n : restricted) {
+                n.allowed = after;
+            }
+        }
+
+        public void revert() {
+            for (int i = 0; i < restricted.length; i++) {
+                restricted[i].allowed = before[i];
+            }
+        }
+    }
+
+    private class WeightCommand implements Command {
+
+        private Edge[] weighted;
+        private int[] before;
+        private int after;
+
+        public WeightCommand(List<Edge> weighted, int after) {
+            this.weighted = weighted.toArray(new Edge[0]);
+            this.before = new int[this.weighted.length];
+            for (int i = 0; i < before.length; i++) {
+                before[i] = this.weighted[i].weight;
+            }
+            this.after = after;
+        }
+
+        public void apply() {
+            for (Edge e : weighted) {
+                e.weight = after;
+            }
+        }
+
+        public void revert() {
+            for (int i = 0; i < weighted.length; i++) {
+                weighted[i].weight = before[i];
+            }
+        }
+    }
+
+    private class MoveCommand implements Command {
+
+        private Node[] moved;
+        private int dx;
+        private int dy;
+
+        public MoveCommand(List<Node> moved, int dx, int dy) {
+            this.moved = moved.toArray(new Node[0]);
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        public void apply() {
+            translate(dx, dy);
+        }
+
+        public void revert() {
+            translate(-dx, -dy);
+        }
+
+        private void translate(int x, int y) {
+            for (Node n : moved) {
+                n.p.translate(x, y);
+                n.setBoundary(n.b);
             }
         }
     }
 
+    private class BatchCommand implements Command {
+
+        private Command[] parts;
+
+        public BatchCommand(Command... parts) {
+            this.parts = parts;
+        }
+
+        public void apply() {
+            for (Command c : parts) {
+                c.apply();
+            }
+        }
+
+        public void revert() {
+            for (int i = parts.length - 1; i >= 0; i--) {
+                parts[i].revert();
+            }
+        }
+    }
+
+    private class UndoAction extends AbstractAction {
+
+        public UndoAction(String name) {
+            super(name);
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            history.undo();
+            repaint();
+        }
+    }
+
+    private class RedoAction extends AbstractAction {
+
+        public RedoAction(String name) {
+            super(name);
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            history.redo();
+            repaint();
+        }
+    }
+
     private class HelpAction extends AbstractAction {
 
         public HelpAction(String name) {
@@ -641,8 +1440,13 @@ public class GraphPanel extends JComponent {
      */
     private static class Edge {
 
+        private static final int CONFLICT_STROKE_SIZE = 3;
+        private static final Color CONFLICT_COLOR = Color.red;
+
         private Node n1;
         private Node n2;
+        private boolean conflict = false;
+        private int weight = 1;
 
         public Edge(Node n1, Node n2) {
             this.n1 = n1;
@@ -652,8 +1456,27 @@ public class GraphPanel extends JComponent {
         public void draw(Graphics g) {
             Point p1 = n1.getLocation();
             Point p2 = n2.getLocation();
-            g.setColor(Color.darkGray);
-            g.drawLine(p1.x, p1.y, p2.x, p2.y);
+            if (conflict) {
+                Graphics2D g2 = (Graphics2D) g;
+                g2.setStroke(new BasicStroke(Edge.CONFLICT_STROKE_SIZE));
+                g2.setColor(Edge.CONFLICT_COLOR);
+                g2.drawLine(p1.x, p1.y, p2.x, p2.y);
+                g2.setStroke(new BasicStroke(1));
+            } else {
+                g.setColor(Color.darkGray);
+                g.drawLine(p1.x, p1.y, p2.x, p2.y);
+            }
+            if (weight != 1) {
+                g.setColor(Color.black);
+                g.drawString(String.valueOf(weight), (p1.x + p2.x) / 2, (p1.y + p2.y) / 2);
+            }
+        }
+
+        /**
+         * Return true if both ends carry the same color.
+         */
+        public boolean isMonochromatic() {
+            return n1.color != null && n1.color.equals(n2.color);
         }
 
         public Node getFirstNode() {
@@ -677,6 +1500,9 @@ public class GraphPanel extends JComponent {
         private boolean selected = false;
         private Rectangle b = new Rectangle();
         private int index;
+        private List<Edge> incident = new ArrayList<Edge>();
+        private int conflicts = 0;
+        private long allowed = Node.ALL_ALLOWED;
 
         private static int indexCounter = 1;
 
@@ -695,6 +1521,8 @@ public class GraphPanel extends JComponent {
         private static final Color OUTLINE_COLOR = Color.black;
 
         private static final Color NONE_COLOR = Color.white;
+        private static final long ALL_ALLOWED = -1L;
+        private static final int ALLOWED_MARK_SIZE = 6;
 
         public static final String POSSIBLE_COLORS_STRING[] = {
             Node.K_NONE, Node.K_RED, Node.K_GREEN, Node.K_BLUE,
@@ -763,6 +1591,23 @@ public class GraphPanel extends JComponent {
                 }
             }
 
+            if (allowed != Node.ALL_ALLOWED) {
+                int x = b.x;
+                for (int i = 0; i < Node.POSSIBLE_COLORS.length; i++) {
+                    if ((allowed & (1L << i)) != 0) {
+                        g2.setColor(Node.POSSIBLE_COLORS[i]);
+                        g2.fillRect(x, b.y + b.height + Node.STROKE_SIZE, Node.ALLOWED_MARK_SIZE, Node.ALLOWED_MARK_SIZE);
+                        x += Node.ALLOWED_MARK_SIZE;
+                    }
+                }
+            }
+
+            if (conflicts > 0) {
+                g2.setColor(Edge.CONFLICT_COLOR);
+                g2.drawOval(b.x - Node.STROKE_SIZE, b.y - Node.STROKE_SIZE,
+                        b.width + 2 * Node.STROKE_SIZE, b.height + 2 * Node.STROKE_SIZE);
+            }
+
             g2.setStroke(new BasicStroke(Node.SELECTED_STROKE_SIZE));
             if (selected) {
                 g2.setColor(Color.darkGray);
@@ -0,0 +1,102 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable array of ints kept outside the Java heap, so that clause
+ * databases of hundreds of millions of literals put no load on the garbage
+ * collector. Storage is a list of direct buffers: the first one doubles
+ * until it reaches the segment size, after that whole segments are added,
+ * so growing never copies more than one segment.
+ */
+public class IntArena {
+
+    private static final int SHIFT = 22;
+    private static final int SEGMENT = 1 << SHIFT;
+    private static final int MASK = SEGMENT - 1;
+
+    private IntBuffer[] segments = new IntBuffer[1];
+    private int capacity;
+    private int size = 0;
+
+    public IntArena(int initial) {
+        capacity = Math.max(16, Math.min(initial, SEGMENT));
+        segments[0] = allocate(capacity);
+    }
+
+    private static IntBuffer allocate(int ints) {
+        return ByteBuffer.allocateDirect(4 * ints).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int i) {
+        return segments[i >>> SHIFT].get(i & MASK);
+    }
+
+    public void set(int i, int x) {
+        segments[i >>> SHIFT].put(i & MASK, x);
+    }
+
+    public void add(int x) {
+        reserve(1);
+        set(size++, x);
+    }
+
+    /**
+     * Append n ints from the given array.
+     */
+    public void add(int[] src, int from, int n) {
+        reserve(n);
+        for (int i = 0; i < n; i++) {
+            set(size++, src[from + i]);
+        }
+    }
+
+    /**
+     * Copy n ints from position from down to position to; to is not after
+     * from, so overlapping ranges are fine.
+     */
+    public void moveDown(int from, int to, int n) {
+        for (int i = 0; i < n; i++) {
+            set(to + i, get(from + i));
+        }
+    }
+
+    /**
+     * Shrink to n ints and give back the segments no longer used.
+     */
+    public void truncate(int n) {
+        size = n;
+        int keep = (int) (((long) n + SEGMENT) >>> SHIFT);
+        if (keep < segments.length) {
+            segments = Arrays.copyOf(segments, keep);
+            capacity = keep * SEGMENT;
+        }
+    }
+
+    private void reserve(int extra) {
+        long need = (long) size + extra;
+        if (need <= capacity) {
+            return;
+        }
+        if (need > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Arena is full at " + size + " ints");
+        }
+        while (capacity < need && capacity < SEGMENT) {
+            IntBuffer old = segments[0];
+            capacity = (int) Math.min(SEGMENT, Math.max(2L * capacity, need));
+            segments[0] = allocate(capacity);
+            old.position(0).limit(size);
+            segments[0].put(old);
+        }
+        while (capacity < need) {
+            segments = Arrays.copyOf(segments, segments.length + 1);
+            segments[segments.length - 1] = allocate(SEGMENT);
+            capacity += SEGMENT;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.Random;
+
+/**
+ * Min-conflicts local search with a short tabu tenure per vertex, used to
+ * show a good coloring quickly while the exact solve is still running.
+ *
+ * Each step takes a random vertex on a monochromatic edge and moves it to
+ * the allowed color the fewest neighbours have. Conflict counts are kept per
+ * vertex and only the moved vertex's neighbours are touched, so a step costs
+ * O(deg). Improvements go to a ColoringChannel at most every PUBLISH_MS, so
+ * copying big colorings doesn't dominate the search.
+ */
+public class LocalSearchColoring {
+
+    public static final long PUBLISH_MS = 20;
+
+    private static final int TENURE = 10;
+
+    private final ColoringProblem problem;
+    private final int[] start;
+    private final int[] adj;
+    private final int[] colors;
+    private final int[] conflicts;
+    private final int[] bad;
+    private final int[] badPos;
+    private final long[] tabuUntil;
+    private final Random rnd = new Random(1);
+    private int badSize = 0;
+    private long cost = 0;
+    private volatile boolean cancelled = false;
+
+    public LocalSearchColoring(ColoringProblem problem) {
+        this.problem = problem;
+        this.start = problem.adjacencyStart();
+        this.adj = problem.adjacency();
+        int n = problem.getVertices();
+        this.colors = new int[n];
+        this.conflicts = new int[n];
+        this.bad = new int[n];
+        this.badPos = new int[n];
+        this.tabuUntil = new long[n];
+    }
+
+    /**
+     * Stop a running search; it then returns the best coloring so far.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Return the number of monochromatic edges plus the number of vertices
+     * without one of their allowed colors, the cost the channel orders by.
+     */
+    public static long violations(ColoringProblem problem, int[] colors) {
+        long count = 0;
+        for (int v = 0; v < colors.length; v++) {
+            if (!fits(problem, v, colors[v])) {
+                count++;
+            }
+        }
+        for (int e = 0; e < problem.getEdgeCount(); e++) {
+            int c = colors[problem.from(e)];
+            if (c != ColoringProblem.FREE && c == colors[problem.to(e)]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean fits(ColoringProblem problem, int v, int c) {
+        return c >= 0 && c < problem.getColors() && (problem.allowed(v) & (1L << c)) != 0;
+    }
+
+    /**
+     * Search from initial, where vertices without a usable color get the
+     * least conflicting one first, for at most maxSteps moves or until there
+     * are no conflicts. Improvements are published to channel.
+     */
+    public int[] search(int[] initial, ColoringChannel channel, long maxSteps) {
+        int n = colors.length;
+        for (int v = 0; v < n; v++) {
+            colors[v] = fits(problem, v, initial[v]) ? initial[v] : ColoringProblem.FREE;
+        }
+        for (int v = 0; v < n; v++) {
+            if (colors[v] == ColoringProblem.FREE) {
+                colors[v] = bestColor(v);
+            }
+        }
+        int unplaced = 0;
+        for (int v = 0; v < n; v++) {
+            if (colors[v] == ColoringProblem.FREE) {
+                unplaced++;
+                continue;
+            }
+            for (int i = start[v]; i < start[v + 1]; i++) {
+                if (colors[adj[i]] == colors[v]) {
+                    conflicts[v]++;
+                }
+            }
+            cost += conflicts[v];
+            if (conflicts[v] > 0) {
+                addBad(v);
+            }
+        }
+        cost /= 2;
+
+        int[] best = colors.clone();
+        long bestCost = cost;
+        long savedCost = cost;
+        long published = System.currentTimeMillis();
+        channel.publish(best, bestCost + unplaced);
+        for (long step = 0; step < maxSteps && cost > 0 && !cancelled; step++) {
+            int v = bad[rnd.nextInt(badSize)];
+            int c = bestColor(v);
+            if (c == colors[v] || (step < tabuUntil[v] && cost > bestCost)) {
+                continue;
+            }
+            move(v, c);
+            tabuUntil[v] = step + TENURE + rnd.nextInt(TENURE);
+            if (cost < bestCost) {
+                bestCost = cost;
+                long now = System.currentTimeMillis();
+                if (now - published >= PUBLISH_MS || cost == 0) {
+                    System.arraycopy(colors, 0, best, 0, n);
+                    savedCost = cost;
+                    channel.publish(best, bestCost + unplaced);
+                    published = now;
+                }
+            }
+        }
+        if (cost <= savedCost) {
+            System.arraycopy(colors, 0, best, 0, n);
+            channel.publish(best, cost + unplaced);
+        }
+        return best;
+    }
+
+    /*
+     * The allowed color, other than v's own if there is another, that the
+     * fewest neighbours have; ties go to a random one.
+     */
+    private int bestColor(int v) {
+        int k = problem.getColors();
+        int[] count = new int[k];
+        for (int i = start[v]; i < start[v + 1]; i++) {
+            int c = colors[adj[i]];
+            if (c >= 0) {
+                count[c]++;
+            }
+        }
+        long allowed = problem.allowed(v) & ColoringProblem.allColors(k);
+        int best = colors[v];
+        int bestCount = Integer.MAX_VALUE;
+        int ties = 0;
+        for (long rest = allowed; rest != 0; rest &= rest - 1) {
+            int c = Long.numberOfTrailingZeros(rest);
+            if (c == colors[v] && Long.bitCount(allowed) > 1) {
+                continue;
+            }
+            if (count[c] < bestCount) {
+                best = c;
+                bestCount = count[c];
+                ties = 1;
+            } else if (count[c] == bestCount && rnd.nextInt(++ties) == 0) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private void move(int v, int c) {
+        int old = colors[v];
+        colors[v] = c;
+        for (int i = start[v]; i < start[v + 1]; i++) {
+            int u = adj[i];
+            if (colors[u] == old) {
+                update(u, -1);
+                update(v, -1);
+                cost--;
+            } else if (colors[u] == c) {
+                update(u, 1);
+                update(v, 1);
+                cost++;
+            }
+        }
+    }
+
+    private void update(int v, int delta) {
+        conflicts[v] += delta;
+        if (conflicts[v] == 0) {
+            int last = bad[--badSize];
+            bad[badPos[v]] = last;
+            badPos[last] = badPos[v];
+        } else if (conflicts[v] == delta) {
+            addBad(v);
+        }
+    }
+
+    private void addBad(int v) {
+        badPos[v] = badSize;
+        bad[badSize++] = v;
+    }
+}
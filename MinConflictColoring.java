@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the coloring whose conflicting edges have the smallest total weight,
+ * for graphs that can't be colored properly with k colors.
+ *
+ * Allowed-color lists and pinned colors stay hard constraints, while "the
+ * ends of edge e differ" becomes a soft clause with relaxation variable r_e.
+ * The search is a linear SAT-UNSAT MaxSAT loop on one incremental Solver:
+ * after a model of cost C, the next call assumes that the weighted sum of
+ * relaxation variables stays below C, using a sequential weight counter that
+ * is encoded only once. Each model is first polished by a greedy descent
+ * and becomes the solver's preferred phase, and every improvement is passed
+ * to the listener, so the caller always has the best coloring found so far.
+ */
+public class MinConflictColoring {
+
+    /**
+     * Limit on counter variables (soft edges times the first cost). Above it
+     * the search stops after the first coloring.
+     */
+    public static final long MAX_COUNTER_VARS = 2000000L;
+
+    public interface Listener {
+
+        void improved(int[] colors, long cost);
+    }
+
+    private final ColoringProblem problem;
+    private final int[] weights;
+    private final Solver solver = new Solver();
+    private final List<Integer> soft = new ArrayList<Integer>();
+    private int[] relax;
+    private int[] adjStart;
+    private int[] adj;
+    private int[] adjWeight;
+    private volatile boolean cancelled = false;
+    private boolean optimal = false;
+    private long cost = -1;
+
+    /**
+     * weights[e] is the weight of the e-th edge of problem, or null for all 1.
+     */
+    public MinConflictColoring(ColoringProblem problem, int[] weights) {
+        this.problem = problem;
+        this.weights = new int[problem.getEdgeCount()];
+        for (int e = 0; e < this.weights.length; e++) {
+            this.weights[e] = weights == null ? 1 : weights[e];
+            if (this.weights[e] < 0) {
+                throw new IllegalArgumentException("Edge " + e + " has negative weight " + this.weights[e]);
+            }
+        }
+    }
+
+    /**
+     * Run the search and return the best coloring, or null if an allowed
+     * list is empty or the search was cancelled before the first coloring.
+     */
+    public int[] solve(Listener listener) {
+        if (!encode()) {
+            return null;
+        }
+        if (solver.solve() != Solver.Result.SAT) {
+            return null;
+        }
+        int[] best = improve();
+        listener.improved(best, cost);
+
+        long counterVars = (long) soft.size() * cost;
+        if (cost == 0 || counterVars > MAX_COUNTER_VARS) {
+            optimal = cost == 0;
+            return best;
+        }
+
+        int[][] sum = counter((int) cost);
+        while (cost > 0 && !cancelled) {
+            Solver.Result result = solver.solve(-sum[soft.size() - 1][(int) cost - 1]);
+            if (result == Solver.Result.SAT) {
+                best = improve();
+                listener.improved(best, cost);
+            } else {
+                optimal = result == Solver.Result.UNSAT;
+                break;
+            }
+        }
+        if (cost == 0) {
+            optimal = true;
+        }
+        return best;
+    }
+
+    /**
+     * Stop after the current solver call; the best coloring so far is kept.
+     */
+    public void cancel() {
+        cancelled = true;
+        solver.interrupt();
+    }
+
+    /**
+     * Return true if the last coloring returned is proven to be the best.
+     */
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    public long getCost() {
+        return cost;
+    }
+
+    /**
+     * Return the total weight of edges whose ends share a color.
+     */
+    public long costOf(int[] colors) {
+        long total = 0;
+        for (int e = 0; e < problem.getEdgeCount(); e++) {
+            if (colors[problem.from(e)] == colors[problem.to(e)]) {
+                total += weights[e];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Take the solver's model, run the greedy descent on it and steer the
+     * next solver call towards the result.
+     */
+    private int[] improve() {
+        int[] colors = decode();
+        descend(colors);
+        cost = costOf(colors);
+        for (int v = 0; v < colors.length; v++) {
+            for (int c = 0; c < problem.getColors(); c++) {
+                solver.setPhase(variable(v, c), colors[v] == c);
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Move single vertices to the allowed color with the least conflicting
+     * weight until no move helps.
+     */
+    private void descend(int[] colors) {
+        if (adj == null) {
+            buildAdjacency();
+        }
+        long[] clash = new long[problem.getColors()];
+        boolean improved = true;
+        while (improved && !cancelled) {
+            improved = false;
+            for (int v = 0; v < colors.length; v++) {
+                long allowed = problem.allowed(v);
+                if (Long.bitCount(allowed) < 2) {
+                    continue;
+                }
+                Arrays.fill(clash, 0);
+                for (int i = adjStart[v]; i < adjStart[v + 1]; i++) {
+                    clash[colors[adj[i]]] += adjWeight[i];
+                }
+                int best = colors[v];
+                for (int c = 0; c < clash.length; c++) {
+                    if ((allowed & (1L << c)) != 0 && clash[c] < clash[best]) {
+                        best = c;
+                    }
+                }
+                if (best != colors[v]) {
+                    colors[v] = best;
+                    improved = true;
+                }
+            }
+        }
+    }
+
+    private void buildAdjacency() {
+        int n = problem.getVertices();
+        adjStart = new int[n + 1];
+        for (int e = 0; e < problem.getEdgeCount(); e++) {
+            adjStart[problem.from(e) + 1]++;
+            adjStart[problem.to(e) + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            adjStart[v + 1] += adjStart[v];
+        }
+        int[] fill = Arrays.copyOf(adjStart, n);
+        adj = new int[2 * problem.getEdgeCount()];
+        adjWeight = new int[adj.length];
+        for (int e = 0; e < problem.getEdgeCount(); e++) {
+            int a = problem.from(e);
+            int b = problem.to(e);
+            adj[fill[a]] = b;
+            adjWeight[fill[a]++] = weights[e];
+            adj[fill[b]] = a;
+            adjWeight[fill[b]++] = weights[e];
+        }
+    }
+
+    private int variable(int v, int c) {
+        return v * problem.getColors() + c + 1;
+    }
+
+    private boolean encode() {
+        int k = problem.getColors();
+        solver.ensureVars(problem.getVertices() * k);
+        for (int v = 0; v < problem.getVertices(); v++) {
+            long allowed = problem.allowed(v);
+            List<Integer> open = new ArrayList<Integer>();
+            for (int c = 0; c < k; c++) {
+                if ((allowed & (1L << c)) != 0) {
+                    open.add(variable(v, c));
+                } else {
+                    solver.addClause(-variable(v, c));
+                }
+            }
+            int[] clause = new int[open.size()];
+            for (int i = 0; i < clause.length; i++) {
+                clause[i] = open.get(i);
+            }
+            if (!solver.addClause(clause)) {
+                return false;
+            }
+            for (int i = 0; i < clause.length - 1; i++) {
+                for (int j = i + 1; j < clause.length; j++) {
+                    solver.addClause(-clause[i], -clause[j]);
+                }
+            }
+        }
+
+        relax = new int[problem.getEdgeCount()];
+        for (int e = 0; e < problem.getEdgeCount(); e++) {
+            int a = problem.from(e);
+            int b = problem.to(e);
+            long shared = problem.allowed(a) & problem.allowed(b);
+            if (weights[e] == 0 || shared == 0) {
+                continue;
+            }
+            relax[e] = solver.newVar();
+            soft.add(e);
+            while (shared != 0) {
+                int c = Long.numberOfTrailingZeros(shared);
+                shared &= shared - 1;
+                solver.addClause(-variable(a, c), -variable(b, c), relax[e]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sequential weight counter over the relaxation variables: sum[i][j - 1]
+     * is forced true when the first i + 1 soft edges weigh at least j in
+     * total, for j up to limit.
+     */
+    private int[][] counter(int limit) {
+        int[][] sum = new int[soft.size()][limit];
+        for (int i = 0; i < soft.size(); i++) {
+            int r = relax[soft.get(i)];
+            int w = weights[soft.get(i)];
+            for (int j = 1; j <= limit; j++) {
+                sum[i][j - 1] = solver.newVar();
+            }
+            for (int j = 1; j <= Math.min(w, limit); j++) {
+                solver.addClause(-r, sum[i][j - 1]);
+            }
+            if (i == 0) {
+                continue;
+            }
+            for (int j = 1; j <= limit; j++) {
+                solver.addClause(-sum[i - 1][j - 1], sum[i][j - 1]);
+            }
+            for (int j = w + 1; j <= limit; j++) {
+                solver.addClause(-sum[i - 1][j - w - 1], -r, sum[i][j - 1]);
+            }
+        }
+        return sum;
+    }
+
+    private int[] decode() {
+        int[] colors = new int[problem.getVertices()];
+        for (int v = 0; v < colors.length; v++) {
+            for (int c = 0; c < problem.getColors(); c++) {
+                if (solver.value(variable(v, c))) {
+                    colors[v] = c;
+                    break;
+                }
+            }
+        }
+        return colors;
+    }
+}
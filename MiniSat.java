@@ -0,0 +1,126 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the external minisat binary. minisat only reads and writes files, so
+ * every solve gets its own temporary input and output file and any number of
+ * solves may run side by side.
+ */
+public class MiniSat {
+
+    private static volatile Boolean available;
+
+    /**
+     * Return true if the minisat binary can be started. The answer is
+     * probed once and then cached.
+     */
+    public static boolean available() {
+        if (available == null) {
+            available = probe();
+        }
+        return available;
+    }
+
+    /**
+     * Check again whether minisat can be started, e.g. after installing it.
+     */
+    public static boolean probe() {
+        try {
+            String[] args = new String[] {"minisat", "-h"};
+            Process proc = new ProcessBuilder(args)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            proc.waitFor();
+        } catch (Exception e) {
+            available = false;
+            return false;
+        }
+
+        available = true;
+        return true;
+    }
+
+    /**
+     * Solve cnf and return the model indexed by variable, or null if the
+     * formula is unsatisfiable.
+     */
+    public static boolean[] solve(Cnf cnf) throws IOException, InterruptedException {
+        try {
+            return solve(cnf, SolverPool.NO_DEADLINE);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Like solve(cnf), but kill minisat once System.nanoTime() passes
+     * deadline.
+     */
+    public static boolean[] solve(Cnf cnf, long deadline) throws IOException, InterruptedException, TimeoutException {
+        Path in = Files.createTempFile("coloring-", ".cnf");
+        Path out = Files.createTempFile("coloring-", ".out");
+        try {
+            Exporter.writeDimacs(cnf, in);
+
+            String[] args = new String[] {"minisat", in.toString(), out.toString()};
+            Process proc = new ProcessBuilder(args)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            try {
+                if (deadline == SolverPool.NO_DEADLINE) {
+                    proc.waitFor();
+                } else if (!proc.waitFor(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    proc.destroyForcibly();
+                    throw new TimeoutException("minisat ran out of time");
+                }
+            } catch (InterruptedException e) {
+                proc.destroyForcibly();
+                throw e;
+            }
+
+            return readModel(out, cnf.getVariables());
+        } finally {
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+        }
+    }
+
+    private static boolean[] readModel(Path file, int variables) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        try {
+            String status = reader.readLine();
+            if (status == null) {
+                throw new IOException("minisat produced no answer");
+            }
+            if (status.equals("UNSAT")) {
+                return null;
+            }
+            if (!status.equals("SAT")) {
+                throw new IOException("minisat could not decide: " + status);
+            }
+
+            boolean[] model = new boolean[variables + 1];
+            String line;
+            while ((line = reader.readLine()) != null) {
+                StringTokenizer tok = new StringTokenizer(line);
+                while (tok.hasMoreTokens()) {
+                    int lit = Integer.parseInt(tok.nextToken());
+                    if (lit > 0 && lit <= variables) {
+                        model[lit] = true;
+                    }
+                }
+            }
+            return model;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Jones-Plassmann greedy coloring on a fork-join pool, for graphs far too big
+ * for the SAT path.
+ *
+ * Every vertex gets a priority (degree first, then a hash, so the largest
+ * degrees go first). Each round colors, in parallel, the uncolored vertices
+ * whose priority beats all their uncolored neighbours. No two such vertices
+ * are adjacent, so each one takes the smallest free color without locks.
+ * Picking and coloring are separate passes over plain arrays, and the join
+ * between them orders the writes.
+ *
+ * Colors from a vertex's allowed list are tried first. If none is free, the
+ * vertex takes the smallest free color from k upwards, so the result is
+ * always proper but may use more than k colors. tighten() then asks the SAT
+ * path for something smaller.
+ */
+public class ParallelColoring {
+
+    private static final int UNCOLORED = -1;
+
+    private final ColoringProblem problem;
+    private final int[] start;
+    private final int[] adj;
+    private final long[] priority;
+    private final int[] colors;
+
+    private ParallelColoring(ColoringProblem problem) {
+        this.problem = problem;
+        this.start = problem.adjacencyStart();
+        this.adj = problem.adjacency();
+        this.priority = new long[problem.getVertices()];
+        this.colors = new int[problem.getVertices()];
+    }
+
+    /**
+     * Color problem on the common pool.
+     */
+    public static int[] color(ColoringProblem problem) {
+        return color(problem, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Color problem using the threads of pool.
+     */
+    public static int[] color(ColoringProblem problem, ForkJoinPool pool) {
+        final ParallelColoring jp = new ParallelColoring(problem);
+        return pool.submit(() -> jp.run()).join();
+    }
+
+    /**
+     * Return the number of colors used, i.e. the largest color plus one.
+     */
+    public static int colorsUsed(int[] colors) {
+        int max = -1;
+        for (int c : colors) {
+            max = Math.max(max, c);
+        }
+        return max + 1;
+    }
+
+    /**
+     * Ask the SAT path for colorings with one color less than the best so far
+     * until it says no or the best uses at most floor colors. Return the best
+     * coloring found, which is colors itself if the SAT path can't do better.
+     * Colors beyond the problem's count are open to every vertex, as in
+     * color().
+     */
+    public static int[] tighten(ColoringProblem problem, int[] colors, int floor)
+            throws IOException, InterruptedException {
+        int k = Math.min(colorsUsed(colors), ColoringProblem.MAX_COLORS + 1);
+        while (k > Math.max(1, floor)) {
+            int[] better = SatColoring.solve(problem.withColors(k - 1));
+            if (better == null) {
+                break;
+            }
+            colors = better;
+            k = colorsUsed(better);
+        }
+        return colors;
+    }
+
+    /*
+     * Runs inside the pool, so the parallel streams below use its threads.
+     */
+    private int[] run() {
+        int n = problem.getVertices();
+        IntStream.range(0, n).parallel().forEach(v -> {
+            priority[v] = ((long) (start[v + 1] - start[v]) << 32) | (mix(v) & 0xffffffffL);
+            colors[v] = UNCOLORED;
+        });
+
+        final boolean[] pick = new boolean[n];
+        int[] active = IntStream.range(0, n).toArray();
+        while (active.length > 0) {
+            final int[] round = active;
+            Arrays.stream(round).parallel().forEach(v -> pick[v] = isLocalMax(v));
+            Arrays.stream(round).parallel().forEach(v -> {
+                if (pick[v]) {
+                    colors[v] = firstFree(v);
+                }
+            });
+            active = Arrays.stream(round).parallel().filter(v -> colors[v] == UNCOLORED).toArray();
+        }
+        return colors;
+    }
+
+    private boolean isLocalMax(int v) {
+        for (int i = start[v]; i < start[v + 1]; i++) {
+            int u = adj[i];
+            if (colors[u] == UNCOLORED && (priority[u] > priority[v] || (priority[u] == priority[v] && u > v))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the first allowed color no neighbour has, or failing that the
+     * smallest free color from k upwards.
+     */
+    private int firstFree(int v) {
+        long used = 0;
+        int high = 0;
+        for (int i = start[v]; i < start[v + 1]; i++) {
+            int c = colors[adj[i]];
+            if (c >= 64) {
+                high++;
+            } else if (c >= 0) {
+                used |= 1L << c;
+            }
+        }
+
+        long free = problem.allowed(v) & ~used;
+        if (free != 0) {
+            return Long.numberOfTrailingZeros(free);
+        }
+        for (int c = problem.getColors(); c < 64; c++) {
+            if ((used & (1L << c)) == 0) {
+                return c;
+            }
+        }
+
+        int[] taken = new int[high];
+        int n = 0;
+        for (int i = start[v]; i < start[v + 1]; i++) {
+            if (colors[adj[i]] >= 64) {
+                taken[n++] = colors[adj[i]];
+            }
+        }
+        Arrays.sort(taken);
+        int c = 64;
+        for (int t : taken) {
+            if (t == c) {
+                c++;
+            } else if (t > c) {
+                break;
+            }
+        }
+        return c;
+    }
+
+    /*
+     * A cheap integer hash so that ties in degree are broken randomly but
+     * reproducibly.
+     */
+    private static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x7feb352d;
+        x ^= x >>> 15;
+        x *= 0x846ca68b;
+        x ^= x >>> 16;
+        return x;
+    }
+}
@@ -0,0 +1,426 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The SAT pipeline behind the Run button: encode a coloring problem to CNF,
+ * hand it to a solver and read the colors back. The solver is a warm worker
+ * from SolverPool, or minisat when the system property coloring.backend is
+ * "minisat".
+ *
+ * Before encoding, vertices with a single allowed color are fixed and their
+ * color is removed from the neighbours' lists, repeatedly. Fixed vertices get
+ * no variables at all, and the remaining vertices only get variables for the
+ * colors still in their lists, so heavily pre-assigned graphs shrink a lot
+ * and a list that runs empty is reported without starting the solver.
+ *
+ * Then vertices with fewer open neighbours than colors left are peeled off,
+ * repeatedly: whatever the rest gets, such a vertex still has a free color.
+ * Peeled vertices get no variables either, and are colored greedily in
+ * reverse peeling order after the solve. Isolated and low-degree vertices
+ * therefore cost nothing, however many colors there are.
+ *
+ * With the built-in worker, adjacency is not encoded as clauses at all: the
+ * worker gets the graph and a ColoringPropagator keeps neighbours apart.
+ */
+public class SatColoring {
+
+    /**
+     * The reduced problem and its CNF. Variable firstVar[v] + i means "vertex
+     * v has the i-th color left in its list"; fixed and peeled vertices have
+     * no variables.
+     */
+    public static class Encoding {
+
+        private final ColoringProblem problem;
+        private final long[] domain;
+        private final int[] firstVar;
+        private final boolean[] peeled;
+        private int[] peelOrder = new int[0];
+        private boolean conflict;
+        private Cnf cnf;
+        private ColoringPropagator propagator;
+
+        private Encoding(ColoringProblem problem) {
+            this.problem = problem;
+            this.domain = new long[problem.getVertices()];
+            this.firstVar = new int[problem.getVertices()];
+            this.peeled = new boolean[problem.getVertices()];
+        }
+
+        public ColoringProblem getProblem() {
+            return problem;
+        }
+
+        /**
+         * Return true if propagation already proved the graph can't be colored.
+         */
+        public boolean isConflict() {
+            return conflict;
+        }
+
+        /**
+         * Return true if v was fixed by propagation.
+         */
+        public boolean isFixed(int v) {
+            return Long.bitCount(domain[v]) == 1;
+        }
+
+        /**
+         * Return true if v has variables, i.e. is neither fixed nor peeled.
+         */
+        public boolean isOpen(int v) {
+            return !isFixed(v) && !peeled[v];
+        }
+
+        /**
+         * Return the colors still open for v.
+         */
+        public long domain(int v) {
+            return domain[v];
+        }
+
+        /**
+         * Return the variable for "v has color c", or 0 if v is not open or c
+         * is not in its list.
+         */
+        public int variable(int v, int c) {
+            if (!isOpen(v) || (domain[v] & (1L << c)) == 0) {
+                return 0;
+            }
+            return firstVar[v] + Long.bitCount(domain[v] & ((1L << c) - 1));
+        }
+
+        public Cnf getCnf() {
+            return cnf;
+        }
+
+        /**
+         * Return what keeps adjacent vertices apart when the CNF leaves that
+         * out, or null if the CNF is complete.
+         */
+        public ColoringPropagator getPropagator() {
+            return propagator;
+        }
+
+        /**
+         * Add the CNF, and the propagator if there is one, to solver.
+         */
+        public void load(Solver solver) {
+            solver.ensureVars(cnf.getVariables());
+            Solver.IntVec clause = new Solver.IntVec();
+            for (int i = 0; i < cnf.getSize(); i++) {
+                int lit = cnf.get(i);
+                if (lit != 0) {
+                    clause.push(lit);
+                    continue;
+                }
+                int[] lits = new int[clause.size];
+                System.arraycopy(clause.data, 0, lits, 0, lits.length);
+                solver.addClause(lits);
+                clause.clear();
+            }
+            if (propagator != null) {
+                solver.setExclusions(propagator);
+            }
+        }
+
+        /**
+         * Read each vertex's color out of a model, then color the peeled
+         * vertices last peeled first.
+         */
+        public int[] decode(boolean[] model) {
+            int[] colors = new int[domain.length];
+            for (int v = 0; v < colors.length; v++) {
+                colors[v] = ColoringProblem.FREE;
+                if (isFixed(v)) {
+                    colors[v] = Long.numberOfTrailingZeros(domain[v]);
+                    continue;
+                }
+                for (int c = 0; c < problem.getColors(); c++) {
+                    int var = variable(v, c);
+                    if (var != 0 && model[var]) {
+                        colors[v] = c;
+                        break;
+                    }
+                }
+            }
+            for (int i = peelOrder.length - 1; i >= 0; i--) {
+                int v = peelOrder[i];
+                long free = domain[v];
+                for (int j = 0; j < problem.degree(v); j++) {
+                    int c = colors[problem.neighbour(v, j)];
+                    if (c != ColoringProblem.FREE) {
+                        free &= ~(1L << c);
+                    }
+                }
+                colors[v] = Long.numberOfTrailingZeros(free);
+            }
+            return colors;
+        }
+    }
+
+    private static final boolean USE_MINISAT = "minisat".equals(System.getProperty("coloring.backend"));
+
+    /**
+     * Return true if solves go to the external minisat binary.
+     */
+    public static boolean usesMiniSat() {
+        return USE_MINISAT;
+    }
+
+    /**
+     * Get the backend ready on a background thread: probe minisat, or start
+     * a pooled worker. The first solve then doesn't wait for either.
+     */
+    public static void warmUp() {
+        Thread warm = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    if (USE_MINISAT) {
+                        MiniSat.available();
+                    } else {
+                        SolverPool.shared().prestart();
+                    }
+                } catch (IOException e) {
+                    // the first solve reports it
+                }
+            }
+        }, "solver-warm-up");
+        warm.setDaemon(true);
+        warm.start();
+    }
+
+    /**
+     * Return the colors of a proper coloring, or null if there is none.
+     */
+    public static int[] solve(ColoringProblem problem) throws IOException, InterruptedException {
+        try {
+            return solve(problem, SolverPool.NO_DEADLINE);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Like solve(problem), but give up once System.nanoTime() passes
+     * deadline. The solver process is killed then, so it doesn't keep
+     * working for nobody.
+     */
+    public static int[] solve(ColoringProblem problem, long deadline)
+            throws IOException, InterruptedException, TimeoutException {
+        boolean lazy = !USE_MINISAT && SolverPool.shared().takesGraphs();
+        Encoding enc = encode(problem, lazy);
+        if (enc.isConflict()) {
+            return null;
+        }
+        if (enc.getCnf().getVariables() == 0) {
+            return enc.decode(new boolean[1]);
+        }
+        boolean[] model = USE_MINISAT ? MiniSat.solve(enc.getCnf(), deadline)
+                : SolverPool.shared().solve(enc.getCnf(), enc.getPropagator(), deadline);
+        return model == null ? null : enc.decode(model);
+    }
+
+    /**
+     * Like solve(), but on a Solver in this JVM. One-off jobs such as
+     * ColoringCli save starting a worker process this way.
+     */
+    public static int[] solveInProcess(ColoringProblem problem) {
+        Encoding enc = encode(problem, true);
+        if (enc.isConflict()) {
+            return null;
+        }
+        Solver solver = new Solver();
+        enc.load(solver);
+        if (solver.solve() != Solver.Result.SAT) {
+            return null;
+        }
+        boolean[] model = new boolean[enc.getCnf().getVariables() + 1];
+        for (int v = 1; v < model.length; v++) {
+            model[v] = solver.value(v);
+        }
+        return enc.decode(model);
+    }
+
+    /**
+     * Propagate fixed colors, then build the CNF of what is left: adjacent
+     * vertices differ and every open vertex has exactly one color. Nothing
+     * is peeled, so every vertex that isn't fixed keeps its variables, as
+     * an export for other tools needs.
+     */
+    public static Encoding encode(ColoringProblem problem) {
+        return encode(problem, false, false);
+    }
+
+    /**
+     * Like encode(problem), but with low-degree vertices peeled off, and with
+     * lazyEdges set the adjacency clauses are left to the encoding's
+     * ColoringPropagator.
+     */
+    public static Encoding encode(ColoringProblem problem, boolean lazyEdges) {
+        return encode(problem, lazyEdges, true);
+    }
+
+    private static Encoding encode(ColoringProblem problem, boolean lazyEdges, boolean peel) {
+        Encoding enc = new Encoding(problem);
+        if (!propagate(enc)) {
+            enc.conflict = true;
+            return enc;
+        }
+        if (peel) {
+            peel(enc);
+        }
+
+        int variables = 0;
+        for (int v = 0; v < problem.getVertices(); v++) {
+            if (enc.isOpen(v)) {
+                enc.firstVar[v] = variables + 1;
+                variables += Long.bitCount(enc.domain[v]);
+            }
+        }
+        enc.cnf = new Cnf(variables);
+        if (lazyEdges) {
+            long[] open = new long[enc.domain.length];
+            for (int v = 0; v < open.length; v++) {
+                open[v] = enc.isOpen(v) ? enc.domain[v] : 0;
+            }
+            enc.propagator = new ColoringPropagator(problem, open, enc.firstVar);
+        } else {
+            adjacentNodesHandler(enc);
+        }
+        nodeHasColorHandler(enc);
+        nodeHasOneColorHandler(enc);
+        return enc;
+    }
+
+    /**
+     * Remove each fixed vertex's color from its neighbours until nothing
+     * changes. Return false if some vertex runs out of colors.
+     */
+    private static boolean propagate(Encoding enc) {
+        ColoringProblem problem = enc.problem;
+        int n = problem.getVertices();
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            enc.domain[v] = problem.allowed(v);
+            if (enc.domain[v] == 0) {
+                return false;
+            }
+            if (enc.isFixed(v)) {
+                queue[tail++] = v;
+            }
+        }
+
+        while (head < tail) {
+            int v = queue[head++];
+            long color = enc.domain[v];
+            for (int i = 0; i < problem.degree(v); i++) {
+                int u = problem.neighbour(v, i);
+                if ((enc.domain[u] & color) == 0) {
+                    continue;
+                }
+                enc.domain[u] &= ~color;
+                if (enc.domain[u] == 0) {
+                    return false;
+                }
+                if (enc.isFixed(u)) {
+                    queue[tail++] = u;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Peel off open vertices with fewer open neighbours than colors, until
+     * none is left. A vertex is marked when it is queued, and its neighbours
+     * lose it when it is taken off the queue, so at decode time fewer
+     * neighbours than it has colors are colored before it.
+     */
+    private static void peel(Encoding enc) {
+        ColoringProblem problem = enc.problem;
+        int n = problem.getVertices();
+        int[] open = new int[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (enc.isFixed(v)) {
+                continue;
+            }
+            for (int i = 0; i < problem.degree(v); i++) {
+                if (!enc.isFixed(problem.neighbour(v, i))) {
+                    open[v]++;
+                }
+            }
+            if (open[v] < Long.bitCount(enc.domain[v])) {
+                enc.peeled[v] = true;
+                queue[tail++] = v;
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            for (int i = 0; i < problem.degree(v); i++) {
+                int u = problem.neighbour(v, i);
+                if (enc.isOpen(u) && --open[u] < Long.bitCount(enc.domain[u])) {
+                    enc.peeled[u] = true;
+                    queue[tail++] = u;
+                }
+            }
+        }
+        enc.peelOrder = Arrays.copyOf(queue, tail);
+    }
+
+    /*
+     * Edges touching a fixed vertex are already satisfied by propagation,
+     * edges touching a peeled one are left to decode, and only colors both
+     * ends can still take need a clause.
+     */
+    private static void adjacentNodesHandler(Encoding enc) {
+        ColoringProblem problem = enc.problem;
+        for (int e = 0; e < problem.getEdgeCount(); e++) {
+            int a = problem.from(e);
+            int b = problem.to(e);
+            if (!enc.isOpen(a) || !enc.isOpen(b)) {
+                continue;
+            }
+            long shared = enc.domain[a] & enc.domain[b];
+            while (shared != 0) {
+                int c = Long.numberOfTrailingZeros(shared);
+                shared &= shared - 1;
+                enc.cnf.add(-enc.variable(a, c), -enc.variable(b, c));
+            }
+        }
+    }
+
+    private static void nodeHasColorHandler(Encoding enc) {
+        for (int v = 0; v < enc.domain.length; v++) {
+            if (!enc.isOpen(v)) {
+                continue;
+            }
+            int[] clause = new int[Long.bitCount(enc.domain[v])];
+            for (int i = 0; i < clause.length; i++) {
+                clause[i] = enc.firstVar[v] + i;
+            }
+            enc.cnf.add(clause);
+        }
+    }
+
+    private static void nodeHasOneColorHandler(Encoding enc) {
+        for (int v = 0; v < enc.domain.length; v++) {
+            if (!enc.isOpen(v)) {
+                continue;
+            }
+            int size = Long.bitCount(enc.domain[v]);
+            for (int i = 0; i < size - 1; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    enc.cnf.add(-(enc.firstVar[v] + i), -(enc.firstVar[v] + j));
+                }
+            }
+        }
+    }
+}
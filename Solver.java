@@ -0,0 +1,841 @@
+import java.util.Arrays;
+
+/**
+ * A small in-process CDCL SAT solver for the modes minisat can't serve:
+ * clauses can be added between calls and each call may carry assumptions,
+ * so learnt clauses are kept across a sequence of related solves.
+ *
+ * Variables and literals use DIMACS numbering on the outside. Inside, a
+ * literal is 2 * var + sign with var counted from 0. Clauses live in one
+ * flat off-heap int arena: a header with the size and flags, the activity,
+ * then the literals. A clause is referred to by its offset in that arena,
+ * and reduceDB compacts the arena once deleted clauses fill half of it.
+ */
+public class Solver {
+
+    public enum Result {
+        SAT, UNSAT, UNKNOWN
+    }
+
+    /**
+     * Pairs of variables that must not both be true, like binary clauses
+     * (-x, -y) that are never stored. The partners of DIMACS variable x are
+     * get(x, 0) to get(x, degree(x) - 1), where 0 stands for no partner.
+     */
+    public interface Exclusions {
+
+        int degree(int x);
+
+        int get(int x, int i);
+    }
+
+    private static final int HEADER = 2;
+    private static final int LEARNT = 1;
+    private static final int DELETED = 2;
+    private static final int NO_REASON = -1;
+    private static final int SCRATCH = 0;
+    private static final double VAR_DECAY = 0.95;
+    private static final double CLAUSE_DECAY = 0.999;
+    private static final int RESTART_BASE = 100;
+    private static final int FIRST_REDUCE = 2000;
+
+    private IntArena mem = new IntArena(1 << 12);
+    private int wasted = 0;
+    private IntVec clauses = new IntVec();
+    private IntVec learnts = new IntVec();
+    private Exclusions exclusions;
+
+    private int vars = 0;
+    private byte[] vals = new byte[0];
+    private int[] level = new int[0];
+    private int[] reason = new int[0];
+    private boolean[] phase = new boolean[0];
+    private boolean[] seen = new boolean[0];
+    private double[] activity = new double[0];
+    private IntVec[] watches = new IntVec[0];
+    private VarHeap order = new VarHeap();
+
+    private int[] trail = new int[0];
+    private int trailSize = 0;
+    private int qhead = 0;
+    private IntVec trailLim = new IntVec();
+
+    private double varInc = 1;
+    private double clauseInc = 1;
+    private boolean ok = true;
+    private boolean[] model = new boolean[1];
+    private long conflicts = 0;
+    private long nextReduce = FIRST_REDUCE;
+    private volatile boolean interrupted = false;
+    private long deadline = Long.MAX_VALUE;
+
+    public Solver() {
+        // a spare binary clause at SCRATCH explains exclusion conflicts
+        allocate(new int[2], 2, false);
+    }
+
+    /**
+     * Create a fresh variable and return its DIMACS number.
+     */
+    public int newVar() {
+        ensureVars(vars + 1);
+        return vars;
+    }
+
+    /**
+     * Make sure variables 1..n exist.
+     */
+    public void ensureVars(int n) {
+        if (n <= vars) {
+            return;
+        }
+        if (n > level.length) {
+            int capacity = Math.max(n, 2 * level.length);
+            vals = Arrays.copyOf(vals, 2 * capacity);
+            level = Arrays.copyOf(level, capacity);
+            reason = Arrays.copyOf(reason, capacity);
+            phase = Arrays.copyOf(phase, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+            activity = Arrays.copyOf(activity, capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            watches = Arrays.copyOf(watches, 2 * capacity);
+            order.grow(capacity);
+        }
+        for (int v = vars; v < n; v++) {
+            reason[v] = NO_REASON;
+            phase[v] = true;
+            watches[2 * v] = new IntVec();
+            watches[2 * v + 1] = new IntVec();
+            order.insert(v);
+        }
+        vars = n;
+    }
+
+    public int getVariables() {
+        return vars;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Add a clause of DIMACS literals. Return false if the formula is now
+     * known to be unsatisfiable.
+     */
+    public boolean addClause(int... clause) {
+        if (!ok) {
+            return false;
+        }
+        cancelUntil(0);
+        int[] lits = new int[clause.length];
+        int n = 0;
+        for (int d : clause) {
+            ensureVars(Math.abs(d));
+            lits[n++] = toLit(d);
+        }
+        Arrays.sort(lits, 0, n);
+
+        int size = 0;
+        int prev = -1;
+        for (int i = 0; i < n; i++) {
+            int l = lits[i];
+            if (val(l) == 1 || l == (prev ^ 1)) {
+                return true;
+            }
+            if (val(l) != -1 && l != prev) {
+                lits[size++] = l;
+                prev = l;
+            }
+        }
+
+        if (size == 0) {
+            ok = false;
+        } else if (size == 1) {
+            assign(lits[0], NO_REASON);
+            ok = propagate() == NO_REASON;
+        } else {
+            int cref = allocate(lits, size, false);
+            clauses.push(cref);
+            attach(cref);
+        }
+        return ok;
+    }
+
+    /**
+     * Enforce the given exclusions from now on, propagating them over the
+     * variables already fixed. Return false if the formula is now known to
+     * be unsatisfiable.
+     */
+    public boolean setExclusions(Exclusions exclusions) {
+        this.exclusions = exclusions;
+        if (ok) {
+            cancelUntil(0);
+            qhead = 0;
+            ok = propagate() == NO_REASON;
+        }
+        return ok;
+    }
+
+    /**
+     * Prefer value when the solver branches on DIMACS variable var.
+     */
+    public void setPhase(int var, boolean value) {
+        ensureVars(var);
+        phase[var - 1] = value;
+    }
+
+    /**
+     * Stop a running solve as soon as possible; it then returns UNKNOWN.
+     * The interrupt stays until clearInterrupt(), so one that arrives
+     * between two solve calls stops the next one.
+     */
+    public void interrupt() {
+        interrupted = true;
+    }
+
+    /**
+     * Let solve calls run again after an interrupt().
+     */
+    public void clearInterrupt() {
+        interrupted = false;
+    }
+
+    /**
+     * Give up with UNKNOWN once System.currentTimeMillis() passes millis.
+     */
+    public void setDeadline(long millis) {
+        deadline = millis;
+    }
+
+    /**
+     * Solve under the given DIMACS assumption literals.
+     */
+    public Result solve(int... assumptions) {
+        if (!ok) {
+            return Result.UNSAT;
+        }
+        int[] assume = new int[assumptions.length];
+        for (int i = 0; i < assume.length; i++) {
+            ensureVars(Math.abs(assumptions[i]));
+            assume[i] = toLit(assumptions[i]);
+        }
+
+        Result result = Result.UNKNOWN;
+        for (int restart = 0; result == Result.UNKNOWN; restart++) {
+            if (interrupted || System.currentTimeMillis() > deadline) {
+                break;
+            }
+            result = search(RESTART_BASE * luby(restart), assume);
+        }
+
+        if (result == Result.SAT) {
+            model = new boolean[vars + 1];
+            for (int v = 0; v < vars; v++) {
+                model[v + 1] = vals[2 * v] == 1;
+            }
+        }
+        cancelUntil(0);
+        return result;
+    }
+
+    /**
+     * Lookahead: return false if unit propagation alone refutes the DIMACS
+     * literals, i.e. they can be pruned without search.
+     */
+    public boolean consistent(int... lits) {
+        if (!ok) {
+            return false;
+        }
+        cancelUntil(0);
+        boolean result = true;
+        for (int d : lits) {
+            ensureVars(Math.abs(d));
+            int p = toLit(d);
+            if (val(p) == -1) {
+                result = false;
+                break;
+            }
+            if (val(p) == 0) {
+                trailLim.push(trailSize);
+                assign(p, NO_REASON);
+                if (propagate() != NO_REASON) {
+                    result = false;
+                    break;
+                }
+            }
+        }
+        cancelUntil(0);
+        return result;
+    }
+
+    /**
+     * Return the value of DIMACS variable var in the last model.
+     */
+    public boolean value(int var) {
+        return var < model.length && model[var];
+    }
+
+    private Result search(long budget, int[] assume) {
+        IntVec learnt = new IntVec();
+        for (long local = 0; ; ) {
+            int confl = propagate();
+            if (confl != NO_REASON) {
+                conflicts++;
+                local++;
+                if (decisionLevel() == 0) {
+                    ok = false;
+                    return Result.UNSAT;
+                }
+                int backLevel = analyze(confl, learnt);
+                cancelUntil(backLevel);
+                if (learnt.size == 1) {
+                    assign(learnt.data[0], NO_REASON);
+                } else {
+                    int cref = allocate(learnt.data, learnt.size, true);
+                    learnts.push(cref);
+                    attach(cref);
+                    bumpClause(cref);
+                    assign(learnt.data[0], cref);
+                }
+                varInc /= VAR_DECAY;
+                clauseInc /= CLAUSE_DECAY;
+                if ((conflicts & 255) == 0 && System.currentTimeMillis() > deadline) {
+                    return Result.UNKNOWN;
+                }
+                continue;
+            }
+
+            if (interrupted || local >= budget) {
+                cancelUntil(0);
+                return Result.UNKNOWN;
+            }
+            if (conflicts >= nextReduce) {
+                nextReduce = conflicts + FIRST_REDUCE + learnts.size / 2;
+                reduceDB();
+            }
+
+            int next = -1;
+            while (decisionLevel() < assume.length) {
+                int p = assume[decisionLevel()];
+                if (val(p) == 1) {
+                    trailLim.push(trailSize);
+                } else if (val(p) == -1) {
+                    return Result.UNSAT;
+                } else {
+                    next = p;
+                    break;
+                }
+            }
+            if (next == -1) {
+                next = pickBranch();
+                if (next == -1) {
+                    return Result.SAT;
+                }
+            }
+            trailLim.push(trailSize);
+            assign(next, NO_REASON);
+        }
+    }
+
+    /**
+     * Unit propagation over the two watched literals of every clause and
+     * over the exclusions of every variable that becomes true. Return the
+     * conflicting clause or NO_REASON.
+     */
+    private int propagate() {
+        int confl = NO_REASON;
+        while (qhead < trailSize) {
+            int falseLit = trail[qhead++] ^ 1;
+            IntVec ws = watches[falseLit];
+            int[] w = ws.data;
+            int i = 0;
+            int j = 0;
+            int n = ws.size;
+            while (i < n) {
+                int cref = w[i];
+                int blocker = w[i + 1];
+                i += 2;
+                if (val(blocker) == 1) {
+                    w[j++] = cref;
+                    w[j++] = blocker;
+                    continue;
+                }
+                if ((mem.get(cref) & DELETED) != 0) {
+                    continue;
+                }
+                int lits = cref + HEADER;
+                if (mem.get(lits) == falseLit) {
+                    mem.set(lits, mem.get(lits + 1));
+                    mem.set(lits + 1, falseLit);
+                }
+                int first = mem.get(lits);
+                if (first != blocker && val(first) == 1) {
+                    w[j++] = cref;
+                    w[j++] = first;
+                    continue;
+                }
+
+                int size = mem.get(cref) >>> 2;
+                boolean moved = false;
+                for (int k = 2; k < size; k++) {
+                    int l = mem.get(lits + k);
+                    if (val(l) != -1) {
+                        mem.set(lits + 1, l);
+                        mem.set(lits + k, falseLit);
+                        watches[l].push2(cref, first);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) {
+                    continue;
+                }
+
+                w[j++] = cref;
+                w[j++] = first;
+                if (val(first) == -1) {
+                    confl = cref;
+                    qhead = trailSize;
+                    while (i < n) {
+                        w[j++] = w[i++];
+                    }
+                } else {
+                    assign(first, cref);
+                }
+            }
+            ws.size = j;
+
+            if (confl == NO_REASON && exclusions != null && (falseLit & 1) == 1) {
+                confl = exclude(falseLit ^ 1);
+            }
+        }
+        return confl;
+    }
+
+    /*
+     * The positive literal p just became true, so every partner of its
+     * variable becomes false with the implicit reason (-y, -x). A partner
+     * that is already true is a conflict, spelled out in the SCRATCH clause.
+     */
+    private int exclude(int p) {
+        int x = (p >> 1) + 1;
+        int degree = exclusions.degree(x);
+        for (int i = 0; i < degree; i++) {
+            int y = exclusions.get(x, i);
+            if (y == 0 || y > vars) {
+                continue;
+            }
+            int q = 2 * (y - 1) + 1;
+            if (val(q) == 0) {
+                assign(q, implicit(p ^ 1));
+            } else if (val(q) == -1) {
+                mem.set(SCRATCH + HEADER, p ^ 1);
+                mem.set(SCRATCH + HEADER + 1, q);
+                qhead = trailSize;
+                return SCRATCH;
+            }
+        }
+        return NO_REASON;
+    }
+
+    /*
+     * A reason below NO_REASON is a binary clause that was never stored:
+     * the implied literal and the literal encoded here.
+     */
+    private static int implicit(int other) {
+        return -2 - other;
+    }
+
+    /**
+     * First-UIP conflict analysis. Fills out with the learnt clause, the
+     * asserting literal first, and returns the level to jump back to.
+     */
+    private int analyze(int confl, IntVec out) {
+        out.clear();
+        out.push(-1);
+        int pathCount = 0;
+        int p = -1;
+        int index = trailSize - 1;
+
+        do {
+            if (confl < NO_REASON) {
+                pathCount += mark(implicit(confl), out);
+            } else {
+                if ((mem.get(confl) & LEARNT) != 0) {
+                    bumpClause(confl);
+                }
+                int size = mem.get(confl) >>> 2;
+                for (int k = (p == -1 ? 0 : 1); k < size; k++) {
+                    pathCount += mark(mem.get(confl + HEADER + k), out);
+                }
+            }
+            while (!seen[trail[index--] >> 1]) {
+                // walk back to the next marked literal
+            }
+            p = trail[index + 1];
+            confl = reason[p >> 1];
+            seen[p >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        out.data[0] = p ^ 1;
+
+        int[] marked = Arrays.copyOfRange(out.data, 1, out.size);
+        int j = 1;
+        for (int i = 1; i < out.size; i++) {
+            int v = out.data[i] >> 1;
+            if (reason[v] == NO_REASON || !redundant(reason[v])) {
+                out.data[j++] = out.data[i];
+            }
+        }
+        for (int lit : marked) {
+            seen[lit >> 1] = false;
+        }
+        out.size = j;
+
+        if (out.size == 1) {
+            return 0;
+        }
+        int max = 1;
+        for (int i = 2; i < out.size; i++) {
+            if (level[out.data[i] >> 1] > level[out.data[max] >> 1]) {
+                max = i;
+            }
+        }
+        int tmp = out.data[1];
+        out.data[1] = out.data[max];
+        out.data[max] = tmp;
+        return level[out.data[1] >> 1];
+    }
+
+    /*
+     * Mark the variable of a reason literal. Return 1 if it is on the
+     * conflict level, otherwise add the literal to the learnt clause.
+     */
+    private int mark(int q, IntVec out) {
+        int v = q >> 1;
+        if (seen[v] || level[v] == 0) {
+            return 0;
+        }
+        bumpVar(v);
+        seen[v] = true;
+        if (level[v] >= decisionLevel()) {
+            return 1;
+        }
+        out.push(q);
+        return 0;
+    }
+
+    /*
+     * A literal is redundant if every other literal of its reason is already
+     * in the learnt clause or fixed at level 0.
+     */
+    private boolean redundant(int cref) {
+        if (cref < NO_REASON) {
+            int v = implicit(cref) >> 1;
+            return seen[v] || level[v] == 0;
+        }
+        int size = mem.get(cref) >>> 2;
+        for (int k = 1; k < size; k++) {
+            int v = mem.get(cref + HEADER + k) >> 1;
+            if (!seen[v] && level[v] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drop the less active half of the learnt clauses that are not reasons.
+     */
+    private void reduceDB() {
+        int[] refs = Arrays.copyOf(learnts.data, learnts.size);
+        Integer[] sorted = new Integer[refs.length];
+        for (int i = 0; i < refs.length; i++) {
+            sorted[i] = refs[i];
+        }
+        Arrays.sort(sorted, (a, b) -> Float.compare(activityOf(a), activityOf(b)));
+
+        learnts.clear();
+        for (int i = 0; i < sorted.length; i++) {
+            int cref = sorted[i];
+            int size = mem.get(cref) >>> 2;
+            if (i < sorted.length / 2 && size > 2 && !locked(cref)) {
+                mem.set(cref, mem.get(cref) | DELETED);
+                wasted += HEADER + size;
+            } else {
+                learnts.push(cref);
+            }
+        }
+        if (wasted > mem.size() / 2) {
+            compact();
+        }
+    }
+
+    /*
+     * Slide the live clauses down over the deleted ones, keeping their
+     * order, and rebuild the watch lists and clause lists to match. A clause
+     * that is a reason takes its reason entry along.
+     */
+    private void compact() {
+        for (int i = 0; i < 2 * vars; i++) {
+            watches[i].clear();
+        }
+        clauses.clear();
+        learnts.clear();
+        int to = SCRATCH + HEADER + 2;
+        int from = to;
+        while (from < mem.size()) {
+            int header = mem.get(from);
+            int need = HEADER + (header >>> 2);
+            if ((header & DELETED) == 0) {
+                if (locked(from)) {
+                    reason[mem.get(from + HEADER) >> 1] = to;
+                }
+                mem.moveDown(from, to, need);
+                if ((header & LEARNT) != 0) {
+                    learnts.push(to);
+                } else {
+                    clauses.push(to);
+                }
+                attach(to);
+                to += need;
+            }
+            from += need;
+        }
+        mem.truncate(to);
+        wasted = 0;
+    }
+
+    private boolean locked(int cref) {
+        int first = mem.get(cref + HEADER);
+        return val(first) == 1 && reason[first >> 1] == cref;
+    }
+
+    private float activityOf(int cref) {
+        return Float.intBitsToFloat(mem.get(cref + 1));
+    }
+
+    private void bumpClause(int cref) {
+        float a = activityOf(cref) + (float) clauseInc;
+        mem.set(cref + 1, Float.floatToRawIntBits(a));
+        if (a > 1e20f) {
+            for (int i = 0; i < learnts.size; i++) {
+                int c = learnts.data[i];
+                mem.set(c + 1, Float.floatToRawIntBits(activityOf(c) * 1e-20f));
+            }
+            clauseInc *= 1e-20;
+        }
+    }
+
+    private void bumpVar(int v) {
+        activity[v] += varInc;
+        if (activity[v] > 1e100) {
+            for (int i = 0; i < vars; i++) {
+                activity[i] *= 1e-100;
+            }
+            varInc *= 1e-100;
+        }
+        order.increased(v);
+    }
+
+    private int pickBranch() {
+        while (!order.isEmpty()) {
+            int v = order.removeMax();
+            if (vals[2 * v] == 0) {
+                return 2 * v + (phase[v] ? 0 : 1);
+            }
+        }
+        return -1;
+    }
+
+    private int allocate(int[] lits, int size, boolean learnt) {
+        int cref = mem.size();
+        mem.add((size << 2) | (learnt ? LEARNT : 0));
+        mem.add(0);
+        mem.add(lits, 0, size);
+        return cref;
+    }
+
+    private void attach(int cref) {
+        int a = mem.get(cref + HEADER);
+        int b = mem.get(cref + HEADER + 1);
+        watches[a].push2(cref, b);
+        watches[b].push2(cref, a);
+    }
+
+    private void assign(int lit, int from) {
+        int v = lit >> 1;
+        vals[lit] = 1;
+        vals[lit ^ 1] = -1;
+        level[v] = decisionLevel();
+        reason[v] = from;
+        trail[trailSize++] = lit;
+    }
+
+    private void cancelUntil(int target) {
+        if (decisionLevel() <= target) {
+            return;
+        }
+        int stop = trailLim.data[target];
+        for (int i = trailSize - 1; i >= stop; i--) {
+            int lit = trail[i];
+            int v = lit >> 1;
+            phase[v] = (lit & 1) == 0;
+            vals[lit] = 0;
+            vals[lit ^ 1] = 0;
+            reason[v] = NO_REASON;
+            if (!order.contains(v)) {
+                order.insert(v);
+            }
+        }
+        trailSize = stop;
+        qhead = stop;
+        trailLim.size = target;
+    }
+
+    private int decisionLevel() {
+        return trailLim.size;
+    }
+
+    private int val(int lit) {
+        return vals[lit];
+    }
+
+    private static int toLit(int dimacs) {
+        if (dimacs == 0) {
+            throw new IllegalArgumentException("0 is not a literal");
+        }
+        return dimacs > 0 ? 2 * (dimacs - 1) : 2 * (-dimacs - 1) + 1;
+    }
+
+    /*
+     * The Luby restart sequence 1, 1, 2, 1, 1, 2, 4, ...
+     */
+    private static long luby(int i) {
+        int size = 1;
+        int seq = 0;
+        while (size < i + 1) {
+            seq++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            seq--;
+            i = i % size;
+        }
+        return 1L << seq;
+    }
+
+    /**
+     * A growable int array.
+     */
+    static class IntVec {
+
+        int[] data = new int[4];
+        int size = 0;
+
+        void push(int x) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, 2 * size);
+            }
+            data[size++] = x;
+        }
+
+        void push2(int x, int y) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, 2 * data.length + 2);
+            }
+            data[size++] = x;
+            data[size++] = y;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Binary max-heap of variables ordered by activity.
+     */
+    private class VarHeap {
+
+        private int[] heap = new int[0];
+        private int[] pos = new int[0];
+        private int size = 0;
+
+        void grow(int n) {
+            int old = pos.length;
+            heap = Arrays.copyOf(heap, n);
+            pos = Arrays.copyOf(pos, n);
+            Arrays.fill(pos, old, n, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        boolean contains(int v) {
+            return pos[v] >= 0;
+        }
+
+        void insert(int v) {
+            heap[size] = v;
+            pos[v] = size;
+            up(size++);
+        }
+
+        void increased(int v) {
+            if (contains(v)) {
+                up(pos[v]);
+            }
+        }
+
+        int removeMax() {
+            int top = heap[0];
+            heap[0] = heap[--size];
+            pos[heap[0]] = 0;
+            pos[top] = -1;
+            if (size > 0) {
+                down(0);
+            }
+            return top;
+        }
+
+        private void up(int i) {
+            int v = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (activity[heap[parent]] >= activity[v]) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                pos[heap[i]] = i;
+                i = parent;
+            }
+            heap[i] = v;
+            pos[v] = i;
+        }
+
+        private void down(int i) {
+            int v = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && activity[heap[child + 1]] > activity[heap[child]]) {
+                    child++;
+                }
+                if (activity[heap[child]] <= activity[v]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                pos[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = v;
+            pos[v] = i;
+        }
+    }
+}
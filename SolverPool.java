@@ -0,0 +1,401 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps warm solver processes around so that a solve does not pay for
+ * starting one. Workers talk the SolverStub line protocol over pipes; by
+ * default they run SolverStub in a separate JVM, and the system property
+ * coloring.solver.cmd may name any other command that speaks the protocol.
+ * At most size workers run at once and callers beyond that wait.
+ *
+ * A worker that is still busy when its caller gives up, because the thread
+ * is interrupted or a deadline passes, is killed and its place freed; a
+ * fresh one is started for the next job.
+ */
+public class SolverPool {
+
+    /**
+     * The deadline of a job that may run as long as it needs.
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final long MAX_POLL_MS = 10;
+
+    private static SolverPool shared;
+
+    private final List<String> command;
+    private final int size;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Worker> idle = new LinkedBlockingDeque<Worker>();
+    private final List<Worker> all = new ArrayList<Worker>();
+
+    /**
+     * A running solver process.
+     */
+    public class Worker {
+
+        private final Process proc;
+        private final BufferedWriter out;
+        private final BufferedReader in;
+
+        private Worker() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+            proc = pb.start();
+            out = new BufferedWriter(new OutputStreamWriter(proc.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+            in = new BufferedReader(new InputStreamReader(proc.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        /**
+         * Add every clause of cnf.
+         */
+        public void add(Cnf cnf) throws IOException {
+            StringBuilder line = new StringBuilder("add");
+            for (int i = 0; i < cnf.getSize(); i++) {
+                int lit = cnf.get(i);
+                line.append(' ').append(lit);
+                if (lit == 0) {
+                    out.write(line.append('\n').toString());
+                    line.setLength(0);
+                    line.append("add");
+                }
+            }
+        }
+
+        /**
+         * Send the graph behind a coloring propagator: each open vertex's
+         * color variables, then the edges between open vertices.
+         */
+        public void add(ColoringPropagator propagator) throws IOException {
+            ColoringProblem graph = propagator.getGraph();
+            for (int v = 0; v < graph.getVertices(); v++) {
+                if (propagator.domain(v) != 0) {
+                    out.write("color " + v + " " + propagator.firstVar(v) + " " + propagator.domain(v) + "\n");
+                }
+            }
+            for (int e = 0; e < graph.getEdgeCount(); e++) {
+                int a = graph.from(e);
+                int b = graph.to(e);
+                if (propagator.domain(a) != 0 && propagator.domain(b) != 0) {
+                    out.write("edge " + a + " " + b + "\n");
+                }
+            }
+        }
+
+        /**
+         * Add one clause of DIMACS literals.
+         */
+        public void add(int... clause) throws IOException {
+            StringBuilder line = new StringBuilder("add");
+            for (int lit : clause) {
+                line.append(' ').append(lit);
+            }
+            out.write(line.append(" 0\n").toString());
+        }
+
+        /**
+         * Solve under the given assumptions. An interrupt kills the worker.
+         */
+        public Solver.Result solve(int... assumptions) throws IOException, InterruptedException {
+            try {
+                return solveUntil(NO_DEADLINE, assumptions);
+            } catch (TimeoutException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Like solve(assumptions), but give up once System.nanoTime() passes
+         * deadline. A worker that gave up must be released as unhealthy.
+         */
+        public Solver.Result solveUntil(long deadline, int... assumptions)
+                throws IOException, InterruptedException, TimeoutException {
+            if (assumptions.length > 0) {
+                StringBuilder line = new StringBuilder("assume");
+                for (int lit : assumptions) {
+                    line.append(' ').append(lit);
+                }
+                out.write(line.append('\n').toString());
+            }
+            out.write("solve\n");
+            out.flush();
+            await(deadline);
+            String answer = readLine();
+            try {
+                return Solver.Result.valueOf(answer.trim());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Solver worker answered " + answer);
+            }
+        }
+
+        /**
+         * Return the last model indexed by variable, sized for variables.
+         */
+        public boolean[] model(int variables) throws IOException {
+            out.write("model\n");
+            out.flush();
+            String answer = readLine();
+            StringTokenizer tok = new StringTokenizer(answer);
+            if (!tok.hasMoreTokens() || !tok.nextToken().equals("v")) {
+                throw new IOException("Solver worker answered " + answer);
+            }
+            boolean[] model = new boolean[variables + 1];
+            while (tok.hasMoreTokens()) {
+                int lit = Integer.parseInt(tok.nextToken());
+                if (lit > 0 && lit <= variables) {
+                    model[lit] = true;
+                }
+            }
+            return model;
+        }
+
+        /**
+         * Forget all clauses so the worker can take the next job.
+         */
+        public void reset() throws IOException {
+            out.write("reset\n");
+            out.flush();
+        }
+
+        /*
+         * A read from the pipe can't be interrupted, so wait for the answer
+         * by polling, with pauses growing to MAX_POLL_MS. Returns once there
+         * is input or the process has exited; an interrupt or the deadline
+         * kills the process, so it stops using its CPU at once.
+         */
+        private void await(long deadline) throws IOException, InterruptedException, TimeoutException {
+            long pause = 1;
+            try {
+                while (!in.ready()) {
+                    if (proc.waitFor(pause, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                    if (expired(deadline)) {
+                        throw new TimeoutException("Solver worker ran out of time");
+                    }
+                    pause = Math.min(2 * pause, MAX_POLL_MS);
+                }
+            } catch (InterruptedException | TimeoutException e) {
+                destroy();
+                throw e;
+            }
+        }
+
+        private String readLine() throws IOException {
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("Solver worker exited");
+            }
+            return line;
+        }
+
+        /**
+         * Kill the process, e.g. to stop a solve from another thread. The
+         * thread waiting for its answer gets an IOException, and the worker
+         * must be released as unhealthy.
+         */
+        public void destroy() {
+            proc.destroyForcibly();
+        }
+    }
+
+    /**
+     * Return the pool shared by the whole application, sized by the system
+     * property coloring.workers or the number of processors.
+     */
+    public static synchronized SolverPool shared() {
+        if (shared == null) {
+            int size = Integer.getInteger("coloring.workers", Runtime.getRuntime().availableProcessors());
+            shared = new SolverPool(size, defaultCommand());
+            final SolverPool pool = shared;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> pool.close()));
+        }
+        return shared;
+    }
+
+    private static List<String> defaultCommand() {
+        String custom = System.getProperty("coloring.solver.cmd");
+        if (custom != null) {
+            return Arrays.asList(custom.trim().split("\\s+"));
+        }
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String archive = System.getProperty("coloring.worker.archive");
+        if (archive != null) {
+            // class data from build.sh; -Xshare:auto ignores a stale archive
+            return Arrays.asList(java, "-XX:SharedArchiveFile=" + archive, "-Xshare:auto",
+                    "-cp", System.getProperty("java.class.path"), "SolverStub");
+        }
+        return Arrays.asList(java, "-cp", System.getProperty("java.class.path"), "SolverStub");
+    }
+
+    public SolverPool(int size, List<String> command) {
+        this.command = command;
+        this.size = Math.max(1, size);
+        this.permits = new Semaphore(this.size, true);
+    }
+
+    /**
+     * Return true if the workers run SolverStub, which takes graphs through
+     * add(ColoringPropagator); other solver binaries only take clauses.
+     */
+    public boolean takesGraphs() {
+        return command.get(command.size() - 1).equals("SolverStub");
+    }
+
+    /**
+     * Return the most workers that run at once.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Return true if deadline, in System.nanoTime() terms, has passed.
+     */
+    public static boolean expired(long deadline) {
+        return deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Start one worker ahead of time so the first solve finds it warm.
+     */
+    public void prestart() throws IOException {
+        if (idle.isEmpty()) {
+            idle.push(spawn());
+        }
+    }
+
+    /**
+     * Solve cnf on a pooled worker and return the model indexed by variable,
+     * or null if the formula is unsatisfiable.
+     */
+    public boolean[] solve(Cnf cnf) throws IOException, InterruptedException {
+        return solve(cnf, null);
+    }
+
+    /**
+     * Like solve(cnf), with the adjacency of a coloring left to propagator
+     * unless it is null.
+     */
+    public boolean[] solve(Cnf cnf, ColoringPropagator propagator) throws IOException, InterruptedException {
+        try {
+            return solve(cnf, propagator, NO_DEADLINE);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Like solve(cnf, propagator), but give up once System.nanoTime()
+     * passes deadline, whether the job is still waiting for a worker or
+     * already solving. The worker is then killed and its place freed.
+     */
+    public boolean[] solve(Cnf cnf, ColoringPropagator propagator, long deadline)
+            throws IOException, InterruptedException, TimeoutException {
+        Worker w = borrow(deadline);
+        boolean healthy = false;
+        try {
+            w.add(cnf);
+            if (propagator != null) {
+                w.add(propagator);
+            }
+            Solver.Result result = w.solveUntil(deadline);
+            if (result == Solver.Result.UNKNOWN) {
+                throw new IOException("Solver worker gave up");
+            }
+            boolean[] model = result == Solver.Result.SAT ? w.model(cnf.getVariables()) : null;
+            w.reset();
+            healthy = true;
+            return model;
+        } finally {
+            release(w, healthy);
+        }
+    }
+
+    /**
+     * Take a worker for a job of several calls. It must go back through
+     * release(), with healthy set to false if it may be in a bad state.
+     */
+    public Worker borrow() throws IOException, InterruptedException {
+        permits.acquire();
+        return take();
+    }
+
+    private Worker borrow(long deadline) throws IOException, InterruptedException, TimeoutException {
+        if (deadline == NO_DEADLINE) {
+            return borrow();
+        }
+        if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            throw new TimeoutException("No solver worker became free in time");
+        }
+        return take();
+    }
+
+    /*
+     * Called with a permit held. Idle workers that died meanwhile are dropped
+     * from the pool; the permit goes back if no worker can be started.
+     */
+    private Worker take() throws IOException {
+        for (Worker w = idle.poll(); w != null; w = idle.poll()) {
+            if (w.proc.isAlive()) {
+                return w;
+            }
+            w.destroy();
+            synchronized (all) {
+                all.remove(w);
+            }
+        }
+        try {
+            return spawn();
+        } catch (IOException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void release(Worker w, boolean healthy) {
+        if (healthy && w.proc.isAlive()) {
+            idle.push(w);
+        } else {
+            w.destroy();
+            synchronized (all) {
+                all.remove(w);
+            }
+        }
+        permits.release();
+    }
+
+    private Worker spawn() throws IOException {
+        Worker w = new Worker();
+        synchronized (all) {
+            all.add(w);
+        }
+        return w;
+    }
+
+    /**
+     * Stop every worker.
+     */
+    public void close() {
+        synchronized (all) {
+            for (Worker w : all) {
+                w.destroy();
+            }
+            all.clear();
+        }
+        idle.clear();
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+/**
+ * A long-lived solver worker that speaks a line protocol on stdin/stdout,
+ * modelled on the IPASIR incremental interface, with the in-process Solver
+ * behind it. Any other binary that speaks the same protocol can take its
+ * place in SolverPool. There are no soft clauses: MinConflictColoring runs
+ * its MaxSAT loop on a Solver in the GUI's JVM, where each improvement
+ * reaches the canvas without a round trip.
+ *
+ * add l1 l2 ... 0    add a hard clause
+ * assume l1 l2 ...   assumptions for the next solve only
+ * color v first mask variables first, first + 1, ... mean vertex v has the
+ *                    colors in mask, lowest first
+ * edge a b           vertices a and b get different colors
+ * solve              answer SAT, UNSAT or UNKNOWN
+ * model              answer "v" followed by every variable's literal and 0
+ * reset              forget everything
+ * quit               exit; so does end of input
+ */
+public class SolverStub {
+
+    public static void main(String[] args) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+
+        Solver solver = new Solver();
+        Solver.IntVec clause = new Solver.IntVec();
+        Solver.IntVec assumptions = new Solver.IntVec();
+        long[] domain = new long[0];
+        int[] firstVar = new int[0];
+        Solver.IntVec edges = new Solver.IntVec();
+        boolean graphChanged = false;
+        String line;
+        while ((line = in.readLine()) != null) {
+            StringTokenizer tok = new StringTokenizer(line);
+            if (!tok.hasMoreTokens()) {
+                continue;
+            }
+            String cmd = tok.nextToken();
+            if (cmd.equals("add")) {
+                clause.clear();
+                while (tok.hasMoreTokens()) {
+                    int lit = Integer.parseInt(tok.nextToken());
+                    if (lit == 0) {
+                        break;
+                    }
+                    clause.push(lit);
+                }
+                solver.addClause(Arrays.copyOf(clause.data, clause.size));
+            } else if (cmd.equals("assume")) {
+                while (tok.hasMoreTokens()) {
+                    assumptions.push(Integer.parseInt(tok.nextToken()));
+                }
+            } else if (cmd.equals("color")) {
+                int v = Integer.parseInt(tok.nextToken());
+                if (v >= domain.length) {
+                    domain = Arrays.copyOf(domain, Math.max(v + 1, 2 * domain.length));
+                    firstVar = Arrays.copyOf(firstVar, domain.length);
+                }
+                firstVar[v] = Integer.parseInt(tok.nextToken());
+                domain[v] = Long.parseLong(tok.nextToken());
+                graphChanged = true;
+            } else if (cmd.equals("edge")) {
+                edges.push2(Integer.parseInt(tok.nextToken()), Integer.parseInt(tok.nextToken()));
+                graphChanged = true;
+            } else if (cmd.equals("solve")) {
+                if (graphChanged) {
+                    ColoringProblem graph = new ColoringProblem(domain.length, ColoringProblem.MAX_COLORS,
+                            Arrays.copyOf(edges.data, edges.size));
+                    solver.setExclusions(new ColoringPropagator(graph, domain, firstVar));
+                    graphChanged = false;
+                }
+                Solver.Result result = solver.solve(Arrays.copyOf(assumptions.data, assumptions.size));
+                assumptions.clear();
+                out.println(result);
+                out.flush();
+            } else if (cmd.equals("model")) {
+                StringBuilder sb = new StringBuilder("v");
+                for (int v = 1; v <= solver.getVariables(); v++) {
+                    sb.append(' ').append(solver.value(v) ? v : -v);
+                }
+                out.println(sb.append(" 0"));
+                out.flush();
+            } else if (cmd.equals("reset")) {
+                solver = new Solver();
+                assumptions.clear();
+                domain = new long[0];
+                firstVar = new int[0];
+                edges.clear();
+                graphChanged = false;
+            } else if (cmd.equals("quit")) {
+                break;
+            } else {
+                out.println("ERROR unknown command " + cmd);
+                out.flush();
+            }
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,68 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times complete launches of the entry points, with and without the AppCDS
+ * archives from build.sh, and prints the median and best wall time of each.
+ * GraphPanel is only timed when a display is available; it exits as soon as
+ * its window is up.
+ *
+ * Usage: java -cp build/coloring.jar StartupBenchmark [runs]
+ */
+public class StartupBenchmark {
+
+    private static final String TRIANGLE = "0 1\n1 2\n2 0\n";
+    private static final String WORKER_JOB = "add 1 2 0\nsolve\nmodel\nquit\n";
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        boolean display = System.getenv("DISPLAY") != null || System.getProperty("os.name").startsWith("Mac");
+
+        System.out.printf("%-12s %10s %10s%n", "launch", "median ms", "best ms");
+        time("cli", runs, null, TRIANGLE, "ColoringCli", "3", "-");
+        time("cli+cds", runs, "build/cli.jsa", TRIANGLE, "ColoringCli", "3", "-");
+        time("worker", runs, null, WORKER_JOB, "SolverStub");
+        time("worker+cds", runs, "build/worker.jsa", WORKER_JOB, "SolverStub");
+        if (display) {
+            time("gui", runs, null, "", "-Dcoloring.exitAfterStartup=true", "GraphPanel");
+            time("gui+cds", runs, "build/gui.jsa", "", "-Dcoloring.exitAfterStartup=true", "GraphPanel");
+        }
+    }
+
+    private static void time(String name, int runs, String archive, String input, String... main)
+            throws IOException, InterruptedException {
+        if (archive != null && !new File(archive).exists()) {
+            System.out.printf("%-12s %10s%n", name, "no " + archive);
+            return;
+        }
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(Arrays.asList(main));
+
+        long[] millis = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process proc = new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            OutputStream in = proc.getOutputStream();
+            in.write(input.getBytes(StandardCharsets.UTF_8));
+            in.close();
+            proc.waitFor();
+            millis[i] = (System.nanoTime() - start) / 1000000;
+        }
+        Arrays.sort(millis);
+        System.out.printf("%-12s %10d %10d%n", name, millis[runs / 2], millis[0]);
+    }
+}
@@ -0,0 +1,32 @@
+#!/bin/sh
+# Compile into build/coloring.jar and record class-data-sharing (AppCDS)
+# archives from short training runs, so later launches map the classes they
+# need instead of loading and verifying them again:
+#
+#   build/cli.jsa     ColoringCli
+#   build/worker.jsa  SolverStub, the pooled solver workers
+#   build/gui.jsa     GraphPanel, only when a display is available
+#
+# Run from anywhere; launch from the repository directory, e.g.
+#   java -XX:SharedArchiveFile=build/cli.jsa -cp build/coloring.jar ColoringCli 3 graph.txt
+set -e
+cd "$(dirname "$0")"
+
+rm -rf build
+mkdir -p build/classes
+javac -encoding UTF-8 -d build/classes *.java
+jar cf build/coloring.jar -C build/classes .
+rm -rf build/classes
+
+printf '0 1\n1 2\n2 0\n' | java -XX:ArchiveClassesAtExit=build/cli.jsa \
+    -cp build/coloring.jar ColoringCli 3 - > /dev/null
+
+printf 'add 1 2 0\nadd -1 0\ncolor 0 3 3\ncolor 1 5 3\nedge 0 1\nsolve\nmodel\nquit\n' | \
+    java -XX:ArchiveClassesAtExit=build/worker.jsa -cp build/coloring.jar SolverStub > /dev/null
+
+if [ -n "$DISPLAY" ] || [ "$(uname)" = Darwin ]; then
+    java -XX:ArchiveClassesAtExit=build/gui.jsa -Dcoloring.exitAfterStartup=true \
+        -cp build/coloring.jar GraphPanel
+fi
+
+echo "Built build/coloring.jar and $(ls build/*.jsa | tr '\n' ' ')"
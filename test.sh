@@ -0,0 +1,12 @@
+#!/bin/sh
+# Compile the sources with the tests under test/ and run every *Test class.
+# Each test is a plain main that throws on the first failed check.
+set -e
+cd "$(dirname "$0")"
+
+rm -rf build/test
+mkdir -p build/test
+javac -encoding UTF-8 -d build/test *.java test/*.java
+for t in test/*Test.java; do
+    java -cp build/test "$(basename "$t" .java)"
+done
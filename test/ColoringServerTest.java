@@ -0,0 +1,126 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts ColoringServer on a free localhost port and checks its answers:
+ * a proper coloring for a small graph, 400 for malformed bodies, and 504
+ * for a job that runs out of time without keeping the worker from the
+ * next request.
+ */
+public class ColoringServerTest {
+
+    private static final String SQUARE = "{\"k\": 2, \"edges\": [[0, 1], [1, 2], [2, 3], [3, 0]]}";
+
+    private static HttpClient client = HttpClient.newHttpClient();
+    private static int port;
+
+    public static void main(String[] args) throws Exception {
+        ColoringServer server = new ColoringServer(0, new ColoringService(SatColoring::solve, 1, 8));
+        server.start();
+        port = server.getPort();
+        try {
+            colorsSmallGraph();
+            reportsUnsat();
+            rejectsMalformedBodies();
+            rejectsHugeVertexCount();
+            colorsManyIsolatedVertices();
+            freesWorkerAfterTimeout();
+        } finally {
+            server.stop();
+            SolverPool.shared().close();
+        }
+        System.out.println("ColoringServerTest passed");
+    }
+
+    private static void colorsSmallGraph() throws Exception {
+        HttpResponse<String> response = post(SQUARE);
+        check(response.statusCode() == 200, "square: status " + response.statusCode());
+        Map<?, ?> answer = (Map<?, ?>) Json.parse(response.body());
+        check("SAT".equals(answer.get("status")), "square: " + response.body());
+        List<?> colors = (List<?>) answer.get("colors");
+        check(colors.size() == 4, "square: " + response.body());
+        for (int v = 0; v < 4; v++) {
+            long c = (Long) colors.get(v);
+            check(c == 0 || c == 1, "square: color out of range in " + response.body());
+            check(c != (Long) colors.get((v + 1) % 4), "square: edge " + v + " is monochromatic");
+        }
+    }
+
+    private static void reportsUnsat() throws Exception {
+        HttpResponse<String> response = post("{\"k\": 2, \"edges\": [[0, 1], [1, 2], [2, 0]]}");
+        check(response.statusCode() == 200, "triangle: status " + response.statusCode());
+        check(response.body().contains("\"UNSAT\""), "triangle: " + response.body());
+    }
+
+    private static void rejectsMalformedBodies() throws Exception {
+        String[] bodies = {
+            "{\"k\": 3, \"edges\": [[0, 1]",
+            "[1, 2]",
+            "{\"edges\": [[0, 1]]}",
+            "{\"k\": \"3\", \"edges\": [[0, 1]]}",
+            "{\"k\": 3, \"edges\": [[0]]}",
+            "{\"k\": 3, \"edges\": [[0, null]]}",
+            "{\"k\": 3, \"edges\": [[0, 1]], \"pinned\": [0, 5]}",
+        };
+        for (String body : bodies) {
+            HttpResponse<String> response = post(body);
+            check(response.statusCode() == 400, body + ": status " + response.statusCode());
+            check(response.body().startsWith("{\"error\":") && !response.body().contains("Exception"),
+                    body + ": " + response.body());
+        }
+    }
+
+    private static void rejectsHugeVertexCount() throws Exception {
+        HttpResponse<String> response = post("{\"k\": 3, \"edges\": [], \"vertices\": 2000000000}");
+        check(response.statusCode() == 400, "huge: status " + response.statusCode());
+    }
+
+    /*
+     * Every vertex is peeled off before encoding, so this needs no clauses
+     * rather than two billion.
+     */
+    private static void colorsManyIsolatedVertices() throws Exception {
+        long start = System.currentTimeMillis();
+        HttpResponse<String> response = post("{\"k\": 64, \"vertices\": 1000000, \"edges\": []}");
+        check(response.statusCode() == 200, "isolated: status " + response.statusCode());
+        check(response.body().startsWith("{\"status\":\"SAT\""), "isolated: " + response.body().substring(0, 40));
+        check(System.currentTimeMillis() - start < 5000, "isolated: took " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /*
+     * K13 with 12 colors keeps a CDCL solver busy for a long time.
+     */
+    private static void freesWorkerAfterTimeout() throws Exception {
+        StringBuilder clique = new StringBuilder("{\"k\": 12, \"timeoutMs\": 300, \"edges\": [");
+        for (int a = 0; a < 13; a++) {
+            for (int b = a + 1; b < 13; b++) {
+                clique.append(a + b == 1 ? "" : ", ").append("[" + a + ", " + b + "]");
+            }
+        }
+        clique.append("]}");
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<String> response = post(clique.toString());
+            check(response.statusCode() == 504, "clique: status " + response.statusCode());
+        }
+
+        HttpResponse<String> response = post(SQUARE.replace("}", ", \"timeoutMs\": 3000}"));
+        check(response.statusCode() == 200, "square after timeouts: status " + response.statusCode());
+    }
+
+    private static HttpResponse<String> post(String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/color"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void check(boolean ok, String msg) {
+        if (!ok) {
+            throw new AssertionError(msg);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that peeling low-degree vertices before encoding keeps the answer
+ * of the full encoding and still yields a proper coloring.
+ */
+public class SatColoringTest {
+
+    public static void main(String[] args) {
+        isolatedVerticesNeedNoVariables();
+        peelingAgreesWithFullEncoding();
+        System.out.println("SatColoringTest passed");
+    }
+
+    /*
+     * A million isolated vertices with 64 colors used to encode to about
+     * 2e9 at-most-one clauses.
+     */
+    private static void isolatedVerticesNeedNoVariables() {
+        ColoringProblem problem = new ColoringProblem(1000000, 64, new int[0]);
+        SatColoring.Encoding enc = SatColoring.encode(problem, true);
+        check(enc.getCnf().getVariables() == 0, enc.getCnf().getVariables() + " variables left");
+        int[] colors = SatColoring.solveInProcess(problem);
+        check(colors != null && LocalSearchColoring.violations(problem, colors) == 0, "isolated vertices not colored");
+    }
+
+    private static void peelingAgreesWithFullEncoding() {
+        Random random = new Random(1);
+        for (int round = 0; round < 300; round++) {
+            int n = 5 + random.nextInt(25);
+            int k = 2 + random.nextInt(4);
+            double density = 0.05 + random.nextDouble() * 0.4;
+            int[] ends = new int[n * (n - 1)];
+            int m = 0;
+            for (int a = 0; a < n; a++) {
+                for (int b = a + 1; b < n; b++) {
+                    if (random.nextDouble() < density) {
+                        ends[m++] = a;
+                        ends[m++] = b;
+                    }
+                }
+            }
+            long[] allowed = new long[n];
+            for (int v = 0; v < n; v++) {
+                allowed[v] = random.nextInt(4) == 0 ? random.nextInt(1 << k) : -1L;
+            }
+            ColoringProblem problem = new ColoringProblem(n, k, Arrays.copyOf(ends, m), null, allowed);
+
+            int[] colors = SatColoring.solveInProcess(problem);
+            boolean full = solveFull(problem);
+            check((colors != null) == full, "round " + round + ": peeled " + (colors != null) + ", full " + full);
+            if (colors != null) {
+                check(LocalSearchColoring.violations(problem, colors) == 0, "round " + round + ": improper coloring");
+            }
+        }
+    }
+
+    private static boolean solveFull(ColoringProblem problem) {
+        SatColoring.Encoding enc = SatColoring.encode(problem);
+        if (enc.isConflict()) {
+            return false;
+        }
+        Solver solver = new Solver();
+        enc.load(solver);
+        return solver.solve() == Solver.Result.SAT;
+    }
+
+    private static void check(boolean ok, String msg) {
+        if (!ok) {
+            throw new AssertionError(msg);
+        }
+    }
+}
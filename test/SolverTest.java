@@ -0,0 +1,83 @@
+/**
+ * Checks that an interrupt reaches the Solver even when it arrives between
+ * two solve calls, as when MinConflictColoring is cancelled while it
+ * tightens its bound.
+ */
+public class SolverTest {
+
+    public static void main(String[] args) {
+        interruptBetweenCallsStopsNextCall();
+        clearInterruptLetsSolveRun();
+        cancelBetweenBoundsStopsMinConflicts();
+        System.out.println("SolverTest passed");
+    }
+
+    private static void interruptBetweenCallsStopsNextCall() {
+        Solver solver = hardSolver();
+        long start = System.currentTimeMillis();
+        // a lost interrupt shows up as running into the deadline
+        solver.setDeadline(start + 2000);
+        solver.interrupt();
+        Solver.Result result = solver.solve();
+        check(result == Solver.Result.UNKNOWN, "interrupted solve answered " + result);
+        check(System.currentTimeMillis() - start < 1000, "interrupted solve kept running");
+
+        result = solver.solve();
+        check(result == Solver.Result.UNKNOWN, "interrupt was lost after one call: " + result);
+    }
+
+    private static void clearInterruptLetsSolveRun() {
+        Solver solver = new Solver();
+        solver.addClause(1, 2);
+        solver.addClause(-1);
+        solver.interrupt();
+        check(solver.solve() == Solver.Result.UNKNOWN, "interrupt ignored");
+        solver.clearInterrupt();
+        check(solver.solve() == Solver.Result.SAT, "solver stayed interrupted");
+        check(!solver.value(1) && solver.value(2), "wrong model");
+    }
+
+    /*
+     * The listener runs between two solver calls, so cancelling from it is
+     * exactly the case that used to be lost.
+     */
+    private static void cancelBetweenBoundsStopsMinConflicts() {
+        final MinConflictColoring search = new MinConflictColoring(clique(13, 12), null);
+        long start = System.currentTimeMillis();
+        int[] colors = search.solve(new MinConflictColoring.Listener() {
+
+            public void improved(int[] colors, long cost) {
+                search.cancel();
+            }
+        });
+        check(colors != null, "no coloring kept after cancel");
+        check(System.currentTimeMillis() - start < 5000, "cancelled search kept running");
+    }
+
+    /*
+     * K13 with 12 colors: the pigeonhole principle, hard for CDCL.
+     */
+    private static Solver hardSolver() {
+        Solver solver = new Solver();
+        SatColoring.encode(clique(13, 12), true).load(solver);
+        return solver;
+    }
+
+    private static ColoringProblem clique(int n, int k) {
+        int[] ends = new int[n * (n - 1)];
+        int i = 0;
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                ends[i++] = a;
+                ends[i++] = b;
+            }
+        }
+        return new ColoringProblem(n, k, ends);
+    }
+
+    private static void check(boolean ok, String msg) {
+        if (!ok) {
+            throw new AssertionError(msg);
+        }
+    }
+}